@@ -0,0 +1,23 @@
+package javaPC;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.Main;
+
+/**
+ * Entry point of benchmarks.jar, runs JMH with JSON results unless another format is asked for
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        if (!options.contains("-rf")) {
+            // written to jmh-result.json unless -rff names another file
+            options.add(0, "json");
+            options.add(0, "-rf");
+        }
+        Main.main(options.toArray(new String[0]));
+    }
+}
@@ -0,0 +1,62 @@
+package javaPC;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse time of the bundled datasets with both loaders
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CsvParseBenchmark {
+
+    @Param({"iris.csv", "wine.csv", "mnist_letters.csv"})
+    public String dataset;
+
+    private File file;
+
+    @Setup
+    public void locate() throws IOException {
+        file = locateDataset(dataset);
+    }
+
+    @Benchmark
+    public Dataset buffered() throws IOException {
+        return CsvParser.readBufferedDataset(file);
+    }
+
+    @Benchmark
+    public Dataset mapped() throws IOException {
+        return MappedCsvParser.readDataset(file);
+    }
+
+    // -DjavaPC.datasets points elsewhere, by default datasets/ is looked up from here or the benchmarks directory
+    protected static File locateDataset(String name) throws IOException {
+        String configured = System.getProperty("javaPC.datasets");
+        String[] directories = configured != null ? new String[] {configured} : new String[] {"datasets", "../datasets"};
+        for (String directory : directories) {
+            File file = new File(directory, name);
+            if (file.isFile()) {
+                return file;
+            }
+        }
+        throw new IOException("Dataset not found: " + name + ", set -DjavaPC.datasets to the datasets directory");
+    }
+}
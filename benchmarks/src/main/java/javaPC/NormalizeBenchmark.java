@@ -0,0 +1,47 @@
+package javaPC;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per column min/max and [0, 1] normalization done by PlotModel
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NormalizeBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    @Param({"10", "100"})
+    public int columns;
+
+    private PlotModel model;
+
+    @Setup(Level.Trial)
+    public void create() {
+        model = new PlotModel(SyntheticData.createDataset(rows, columns));
+    }
+
+    @Benchmark
+    public PlotModel normalize() {
+        model.invalidate();
+        return model;
+    }
+}
@@ -0,0 +1,69 @@
+package javaPC;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Full frame headless paint of a PlotPanel, with the plot layer rendered again on every call
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsPrepend = "-Djava.awt.headless=true")
+public class RenderBenchmark {
+
+    private static final int WIDTH = 1600;
+    private static final int HEIGHT = 750;
+
+    @Param({"10000", "100000"})
+    public int rows;
+
+    @Param({"8", "64"})
+    public int axes;
+
+    @Param({"JAVA2D", "PARALLEL_RASTER", "DENSITY_LOG"})
+    public RenderMode mode;
+
+    private PlotPanel panel;
+    private BufferedImage frame;
+    private Graphics2D graphics;
+
+    @Setup(Level.Trial)
+    public void create() {
+        panel = new PlotPanel(SyntheticData.createDataset(rows, axes));
+        panel.setProgressiveRendering(false);
+        panel.setRenderMode(mode);
+        panel.setSize(WIDTH, HEIGHT);
+        frame = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        graphics = frame.createGraphics();
+    }
+
+    @TearDown(Level.Trial)
+    public void dispose() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paint() {
+        panel.invalidatePlotLayer();
+        panel.paint(graphics);
+        return frame;
+    }
+}
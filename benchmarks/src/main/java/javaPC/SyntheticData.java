@@ -0,0 +1,69 @@
+package javaPC;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.SplittableRandom;
+
+/**
+ * Seeded rows x columns datasets for the benchmarks, in memory or written out as CSV
+ */
+public class SyntheticData {
+
+    protected static final int CLASS_COUNT = 4;
+    private static final long SEED = 42;
+
+    protected static String[] header(int columns) {
+        String[] header = new String[columns + 1];
+        for (int col = 0; col < columns; col++) {
+            header[col] = "att" + (col + 1);
+        }
+        header[columns] = "class";
+        return header;
+    }
+
+    protected static Dataset createDataset(int rows, int columns) {
+        Dataset data = new Dataset(header(columns), rows);
+        SplittableRandom random = new SplittableRandom(SEED);
+        float[] values = new float[columns];
+        for (int row = 0; row < rows; row++) {
+            int classId = row % CLASS_COUNT;
+            for (int col = 0; col < columns; col++) {
+                values[col] = value(random, classId, col);
+            }
+            data.addRow(values, "class" + classId);
+        }
+        return data;
+    }
+
+    // Same values as createDataset, as a CSV with two decimals per cell
+    protected static File writeCsv(int rows, int columns) throws IOException {
+        File file = File.createTempFile("javaPC-" + rows + "x" + columns + "-", ".csv");
+        file.deleteOnExit();
+        SplittableRandom random = new SplittableRandom(SEED);
+        try (BufferedWriter out = new BufferedWriter(new FileWriter(file, StandardCharsets.UTF_8))) {
+            out.write(String.join(",", header(columns)));
+            out.newLine();
+            StringBuilder line = new StringBuilder();
+            for (int row = 0; row < rows; row++) {
+                int classId = row % CLASS_COUNT;
+                line.setLength(0);
+                for (int col = 0; col < columns; col++) {
+                    line.append(String.format(Locale.ROOT, "%.2f", value(random, classId, col))).append(',');
+                }
+                line.append("class").append(classId);
+                out.write(line.toString());
+                out.newLine();
+            }
+        }
+        return file;
+    }
+
+    // Each class follows its own wave across the columns, so lines group the way real data does
+    private static float value(SplittableRandom random, int classId, int col) {
+        return (float) (50 + 30 * Math.sin(col * 0.3 + classId) + 10 * random.nextDouble());
+    }
+}
@@ -0,0 +1,59 @@
+package javaPC;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parse throughput on generated rows x columns files, reported per file
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class SyntheticParseBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int rows;
+
+    @Param({"10", "100"})
+    public int columns;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        file = SyntheticData.writeCsv(rows, columns);
+    }
+
+    @TearDown(Level.Trial)
+    public void delete() {
+        file.delete();
+    }
+
+    @Benchmark
+    public Dataset buffered() throws IOException {
+        return CsvParser.readBufferedDataset(file);
+    }
+
+    @Benchmark
+    public Dataset mapped() throws IOException {
+        return MappedCsvParser.readDataset(file);
+    }
+}
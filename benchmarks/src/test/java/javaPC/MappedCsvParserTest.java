@@ -0,0 +1,112 @@
+package javaPC;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * The memory mapped parser has to read every cell to the same float as Float.parseFloat, as the buffered one does
+ */
+public class MappedCsvParserTest {
+
+    private static final int COLUMNS = 4;
+    private static final long SEED = 7;
+
+    @TempDir
+    File directory;
+
+    @Test
+    public void longMantissasMatchFloatParseFloat() throws IOException {
+        List<String> cells = new ArrayList<>(List.of(
+                "9007199254740993", "9007199254740993e-10", "123456789012345678901", "0.1234567890123456789",
+                "16777217", "16777217.0000000001", "33554431.5", "1.000000059604644775390625",
+                "1.0000000596046448", "1.00000005960464477539062500001", "3.4028235677973366e38", "1.4e-45",
+                "-0.0", "0.000000000000000000000000123"));
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < 20_000; i++) {
+            cells.add(randomDecimal(random));
+            cells.add(nearMidpoint(random));
+        }
+        assertParsedLike(cells);
+    }
+
+    @Test
+    public void shortRowNamesItsLine() throws IOException {
+        File csv = write("a,b,class\n1,2,x\n3,y\n");
+        NumberFormatException e = assertThrows(NumberFormatException.class, () -> MappedCsvParser.readDataset(csv));
+        assertTrue(e.getMessage().startsWith("Line 2 of the chunk at byte 10 "), e.getMessage());
+    }
+
+    private void assertParsedLike(List<String> cells) throws IOException {
+        StringBuilder text = new StringBuilder();
+        for (int col = 0; col < COLUMNS; col++) {
+            text.append("att").append(col + 1).append(',');
+        }
+        text.append("class\n");
+        int rows = (cells.size() + COLUMNS - 1) / COLUMNS;
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < COLUMNS; col++) {
+                text.append(cellAt(cells, row * COLUMNS + col)).append(',');
+            }
+            text.append("c\n");
+        }
+        Dataset data = MappedCsvParser.readDataset(write(text.toString()));
+
+        assertEquals(rows, data.getRowCount());
+        for (int i = 0; i < rows * COLUMNS; i++) {
+            String cell = cellAt(cells, i);
+            float expected = Float.parseFloat(cell);
+            float actual = data.getColumn(i % COLUMNS)[i / COLUMNS];
+            assertEquals(Float.floatToIntBits(expected), Float.floatToIntBits(actual), cell);
+        }
+    }
+
+    private static String cellAt(List<String> cells, int i) {
+        return i < cells.size() ? cells.get(i) : "0";
+    }
+
+    // Up to 25 digits with the point anywhere and sometimes an exponent
+    private static String randomDecimal(SplittableRandom random) {
+        int digits = 1 + random.nextInt(25);
+        StringBuilder cell = new StringBuilder(random.nextBoolean() ? "-" : "");
+        int point = random.nextInt(digits + 1);
+        for (int i = 0; i < digits; i++) {
+            if (i == point && i > 0) {
+                cell.append('.');
+            }
+            cell.append((char) ('0' + random.nextInt(10)));
+        }
+        if (random.nextInt(4) == 0) {
+            cell.append('e').append(random.nextInt(61) - 30);
+        }
+        return cell.toString();
+    }
+
+    // A value halfway between two floats rounded to 15 to 19 digits, just above or below the halfway point
+    private static String nearMidpoint(SplittableRandom random) {
+        float value = Float.intBitsToFloat(random.nextInt(0x7F000000));
+        BigDecimal midpoint = new BigDecimal(value).add(new BigDecimal(Math.nextUp(value))).divide(BigDecimal.valueOf(2));
+        RoundingMode mode = random.nextBoolean() ? RoundingMode.UP : RoundingMode.DOWN;
+        return midpoint.round(new MathContext(15 + random.nextInt(5), mode)).toString();
+    }
+
+    private File write(String text) throws IOException {
+        File csv = new File(directory, "values.csv");
+        Files.write(csv.toPath(), text.getBytes(StandardCharsets.UTF_8));
+        return csv;
+    }
+}
@@ -0,0 +1,290 @@
+package javaPC;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Value range brushes on attributes, a row is selected when it falls inside every brush.
+ * Each brushed attribute keeps its rows sorted by value, so a brush resolves to its rows with two binary
+ * searches and the brushes combine as bitsets, no pass over every row and attribute.
+ */
+public class AxisBrushes {
+
+    // appended rows are tested one by one until there are this fraction of the sorted ones, then it is sorted again
+    private static final int RESORT_FRACTION = 8;
+    // share of the heap the sorted columns may take to be built up front
+    private static final int HEAP_SHARE = 4;
+
+    private final Dataset data;
+
+    // per attribute, its rows sorted by value, built in the background up front or on the first brush
+    private final List<CompletableFuture<SortedColumn>> sorted;
+
+    // brushed attribute to its raw value range and matching rows, in the order they were brushed
+    private final LinkedHashMap<Integer, float[]> ranges = new LinkedHashMap<>();
+    private final LinkedHashMap<Integer, long[]> matches = new LinkedHashMap<>();
+
+    // rows inside every brush, null while nothing is brushed; read by render workers
+    private volatile long[] selection;
+    private int selectedCount;
+
+    protected AxisBrushes(Dataset data) {
+        this.data = data;
+        sorted = new ArrayList<>(Collections.nCopies(data.getAttributeCount(), null));
+    }
+
+    /**
+     * Sort every attribute on background threads, so the first brush does not wait for it. The index takes
+     * 8 bytes per value, twice the dataset, so it is only built up front when that fits a share of the heap.
+     */
+    protected void sortInBackground() {
+        int rowCount = data.getRowCount();
+        long bytes = 8L * rowCount * sorted.size();
+        if (rowCount == 0 || bytes > Runtime.getRuntime().maxMemory() / HEAP_SHARE) {
+            return;
+        }
+        for (int col = 0; col < sorted.size(); col++) {
+            if (sorted.get(col) == null) {
+                float[] values = data.getColumn(col);
+                sorted.set(col, CompletableFuture.supplyAsync(() -> sort(values, rowCount)));
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return ranges.isEmpty();
+    }
+
+    // Raw {min, max} brushed on the attribute, or null
+    public float[] getRange(int col) {
+        return ranges.get(col);
+    }
+
+    // Bitset of the selected rows, one bit per row, null while nothing is brushed
+    public long[] getSelection() {
+        return selection;
+    }
+
+    public int getSelectedCount() {
+        return selectedCount;
+    }
+
+    protected static boolean isSelected(long[] selection, int row) {
+        return (selection[row >>> 6] & (1L << row)) != 0;
+    }
+
+    // Brush the attribute's raw values from min to max inclusive, replacing its earlier brush
+    protected void setRange(int col, float min, float max) {
+        ranges.put(col, new float[] {Math.min(min, max), Math.max(min, max)});
+        matches.put(col, match(col, Math.min(min, max), Math.max(min, max)));
+        combine();
+    }
+
+    protected void removeRange(int col) {
+        ranges.remove(col);
+        matches.remove(col);
+        combine();
+    }
+
+    protected void clear() {
+        ranges.clear();
+        matches.clear();
+        combine();
+    }
+
+    // Test rows [from, to) appended to the dataset against every brush, the sorted columns are left as they are
+    protected void rowsAppended(int from, int to) {
+        if (isEmpty()) {
+            return;
+        }
+        for (Map.Entry<Integer, float[]> entry : ranges.entrySet()) {
+            int col = entry.getKey();
+            long[] bits = Arrays.copyOf(matches.get(col), wordCount(to));
+            scan(col, entry.getValue()[0], entry.getValue()[1], from, to, bits);
+            matches.put(col, bits);
+        }
+        combine();
+    }
+
+    // The dataset's rows were replaced, sort again when brushed and match every brush anew
+    protected void dataReplaced() {
+        Collections.fill(sorted, null);
+        for (Map.Entry<Integer, float[]> entry : ranges.entrySet()) {
+            matches.put(entry.getKey(), match(entry.getKey(), entry.getValue()[0], entry.getValue()[1]));
+        }
+        combine();
+    }
+
+    /**
+     * Rows of a sliding window were replaced in place, or all of them moved when rows is null. Only those rows are
+     * tested against the brushes, and the sorted columns are dropped until the next brush needs one.
+     */
+    protected void rowsReplaced(int[] rows) {
+        Collections.fill(sorted, null);
+        if (isEmpty()) {
+            return;
+        }
+        int rowCount = data.getRowCount();
+        for (Map.Entry<Integer, float[]> entry : ranges.entrySet()) {
+            int col = entry.getKey();
+            float min = entry.getValue()[0];
+            float max = entry.getValue()[1];
+            long[] bits = Arrays.copyOf(matches.get(col), wordCount(rowCount));
+            if (rows == null) {
+                Arrays.fill(bits, 0);
+                scan(col, min, max, 0, rowCount, bits);
+            } else {
+                float[] values = data.getColumn(col);
+                for (int row : rows) {
+                    if (values[row] >= min && values[row] <= max) {
+                        bits[row >>> 6] |= 1L << row;
+                    } else {
+                        bits[row >>> 6] &= ~(1L << row);
+                    }
+                }
+            }
+            matches.put(col, bits);
+        }
+        combine();
+    }
+
+    private void combine() {
+        if (matches.isEmpty()) {
+            selection = null;
+            selectedCount = 0;
+            return;
+        }
+        long[] combined = null;
+        for (long[] bits : matches.values()) {
+            if (combined == null) {
+                combined = bits.clone();
+            } else {
+                for (int word = 0; word < combined.length; word++) {
+                    combined[word] &= bits[word];
+                }
+            }
+        }
+        int count = 0;
+        for (long word : combined) {
+            count += Long.bitCount(word);
+        }
+        selectedCount = count;
+        selection = combined;
+    }
+
+    // Rows of the attribute with min <= value <= max
+    private long[] match(int col, float min, float max) {
+        int rowCount = data.getRowCount();
+        SortedColumn column = sorted.get(col) != null ? sorted.get(col).join() : null;
+        if (column == null || rowCount - column.rows.length > column.rows.length / RESORT_FRACTION) {
+            column = sort(data.getColumn(col), rowCount);
+            sorted.set(col, CompletableFuture.completedFuture(column));
+        }
+        float[] values = column.values;
+        int[] rows = column.rows;
+        int sortedCount = rows.length;
+        int from = lowerBound(values, min);
+        int to = upperBound(values, max);
+        long[] bits = new long[wordCount(rowCount)];
+
+        if (to - from <= sortedCount / 2) {
+            for (int i = from; i < to; i++) {
+                bits[rows[i] >>> 6] |= 1L << rows[i];
+            }
+        } else {
+            // a wide brush touches fewer rows by clearing the ones outside it
+            Arrays.fill(bits, 0, sortedCount >>> 6, -1L);
+            if ((sortedCount & 63) != 0) {
+                bits[sortedCount >>> 6] = (1L << sortedCount) - 1;
+            }
+            for (int i = 0; i < from; i++) {
+                bits[rows[i] >>> 6] &= ~(1L << rows[i]);
+            }
+            for (int i = to; i < sortedCount; i++) {
+                bits[rows[i] >>> 6] &= ~(1L << rows[i]);
+            }
+        }
+        scan(col, min, max, sortedCount, rowCount, bits);
+        return bits;
+    }
+
+    private void scan(int col, float min, float max, int from, int to, long[] bits) {
+        float[] values = data.getColumn(col);
+        for (int row = from; row < to; row++) {
+            if (values[row] >= min && values[row] <= max) {
+                bits[row >>> 6] |= 1L << row;
+            }
+        }
+    }
+
+    // Rows 0 to rowCount sorted by value; value and row share one long key so a single primitive sort does it
+    private static SortedColumn sort(float[] values, int rowCount) {
+        long[] keys = new long[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            int bits = Float.floatToIntBits(values[row]);
+            // flip negative floats so the signed int order matches the float order
+            int ordered = bits ^ ((bits >> 31) & 0x7FFFFFFF);
+            keys[row] = ((long) ordered << 32) | row;
+        }
+        Arrays.parallelSort(keys);
+
+        SortedColumn column = new SortedColumn(rowCount);
+        for (int i = 0; i < rowCount; i++) {
+            column.rows[i] = (int) keys[i];
+            column.values[i] = values[column.rows[i]];
+        }
+        return column;
+    }
+
+    // First index holding a value >= min
+    private static int lowerBound(float[] values, float min) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < min) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // First index holding a value > max
+    private static int upperBound(float[] values, float max) {
+        int low = 0;
+        int high = values.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] <= max) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int wordCount(int rowCount) {
+        return (rowCount + 63) >>> 6;
+    }
+
+    /**
+     * One attribute's values in ascending order and the row each one came from
+     */
+    private static class SortedColumn {
+        final float[] values;
+        final int[] rows;
+
+        SortedColumn(int rowCount) {
+            values = new float[rowCount];
+            rows = new int[rowCount];
+        }
+    }
+}
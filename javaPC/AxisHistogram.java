@@ -0,0 +1,109 @@
+package javaPC;
+
+import java.util.stream.IntStream;
+
+/**
+ * Per axis, per class binned histogram of the normalized data, kept in primitive arrays
+ */
+public class AxisHistogram {
+
+    protected static final int DEFAULT_BINS = 20;
+    protected static final int MIN_VERTEX_SIZE = 7;
+    protected static final int MAX_VERTEX_SIZE = 20;
+
+    /**
+     * How the histogram is shown on the plot
+     */
+    protected enum Style {
+        OFF, VERTICES, BARS
+    }
+
+    private final int binCount;
+    private final int classCount;
+
+    // counts[axis][classId * binCount + bin], totals[axis][bin] sums the classes of a bin
+    private final int[][] counts;
+    private final int[][] totals;
+    private final int[] maxTotals;
+    // axes whose rows are counted, a dataset read on demand only counts those shown
+    private final boolean[] counted;
+
+    protected AxisHistogram(PlotModel model, int binCount) {
+        this.binCount = binCount;
+        this.classCount = model.getDataset().getClassCount();
+
+        int axisCount = model.getAxisCount();
+        counts = new int[axisCount][binCount * classCount];
+        totals = new int[axisCount][binCount];
+        maxTotals = new int[axisCount];
+        counted = new boolean[axisCount];
+        if (!(model.getDataset() instanceof LazyDataset)) {
+            addRows(model, 0, model.getDataset().getRowCount());
+        }
+    }
+
+    // Count rows [from, to) into the bins, used for the initial build and for appended rows
+    protected void addRows(PlotModel model, int from, int to) {
+        countAxes(model, IntStream.range(0, counts.length).toArray(), from, to);
+    }
+
+    // Count the attributes the view shows on their own axes that are not counted yet, their columns read together
+    protected void countAxes(AxisView view) {
+        int[] axes = IntStream.range(0, view.getSlotCount()).filter(slot -> !view.isBand(slot))
+                .map(view::getAttribute).filter(axis -> !counted[axis]).distinct().toArray();
+        if (axes.length > 0) {
+            PlotModel model = view.getModel();
+            model.getNormalized(axes);
+            countAxes(model, axes, 0, model.getDataset().getRowCount());
+        }
+    }
+
+    private void countAxes(PlotModel model, int[] axes, int from, int to) {
+        int[] classIds = model.getDataset().getClassIds();
+        IntStream.of(axes).parallel().forEach(axis -> {
+            float[] values = model.getNormalized(axis);
+            int[] axisCounts = counts[axis];
+            int[] axisTotals = totals[axis];
+            for (int row = from; row < to; row++) {
+                int bin = toBin(values[row]);
+                axisCounts[classIds[row] * binCount + bin]++;
+                axisTotals[bin]++;
+            }
+            int max = 0;
+            for (int total : axisTotals) {
+                max = Math.max(max, total);
+            }
+            maxTotals[axis] = max;
+            counted[axis] = true;
+        });
+    }
+
+    protected int toBin(float normalized) {
+        return Math.min(binCount - 1, Math.max(0, (int) (normalized * binCount)));
+    }
+
+    public int getBinCount() {
+        return binCount;
+    }
+
+    public int getCount(int axis, int classId, int bin) {
+        return counts[axis][classId * binCount + bin];
+    }
+
+    public int getTotal(int axis, int bin) {
+        return totals[axis][bin];
+    }
+
+    public int getMaxTotal(int axis) {
+        return maxTotals[axis];
+    }
+
+    // Vertex diameter scaled by how full the value's bin is relative to the axis' fullest bin
+    protected int getVertexSize(int axis, float normalized) {
+        if (maxTotals[axis] == 0) {
+            return MIN_VERTEX_SIZE;
+        }
+        int total = totals[axis][toBin(normalized)];
+        return MIN_VERTEX_SIZE + Math.round((MAX_VERTEX_SIZE - MIN_VERTEX_SIZE) * (float) total / maxTotals[axis]);
+    }
+}
@@ -0,0 +1,103 @@
+package javaPC;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.text.DecimalFormat;
+
+/**
+ * Axis name and min/max labels laid out once per view and font, then drawn as cached glyph vectors
+ */
+public class AxisLabels {
+
+    // Baselines of the three label rows, the min row is measured up from the bottom edge
+    private static final int NAME_BASELINE = 17;
+    private static final int MAX_BASELINE = 30;
+    private static final int MIN_BASELINE_FROM_BOTTOM = 13;
+
+    // gap kept between neighbouring labels of a row, labels that would crowd in are skipped
+    private static final int LABEL_GAP = 6;
+
+    private final AxisView view;
+    private final Font font;
+    private final FontRenderContext context;
+
+    private final GlyphVector[] names;
+    private final GlyphVector[] maxes;
+    private final GlyphVector[] mins;
+
+    // half of each label's advance, so drawing can center without measuring
+    private final float[] nameOffsets;
+    private final float[] maxOffsets;
+    private final float[] minOffsets;
+
+    protected AxisLabels(AxisView view, Font font, FontRenderContext context) {
+        this.view = view;
+        this.font = font;
+        this.context = context;
+
+        PlotModel model = view.getModel();
+        Dataset data = model.getDataset();
+        int axisCount = view.getSlotCount();
+        names = new GlyphVector[axisCount];
+        maxes = new GlyphVector[axisCount];
+        mins = new GlyphVector[axisCount];
+        nameOffsets = new float[axisCount];
+        maxOffsets = new float[axisCount];
+        minOffsets = new float[axisCount];
+
+        DecimalFormat formatter = new DecimalFormat("0.##");
+        for (int axis = 0; axis < axisCount; axis++) {
+            int attribute = view.getAttribute(axis);
+            if (view.isBand(axis)) {
+                // bands show the mean of their attributes, so they are named by their members and have no units
+                names[axis] = font.createGlyphVector(context, bandName(data, view.getAttributes(axis)));
+                maxes[axis] = font.createGlyphVector(context, "");
+                mins[axis] = font.createGlyphVector(context, "");
+            } else {
+                names[axis] = font.createGlyphVector(context, data.getAttributeName(attribute));
+                maxes[axis] = font.createGlyphVector(context, formatter.format(model.getMax(attribute)));
+                mins[axis] = font.createGlyphVector(context, formatter.format(model.getMin(attribute)));
+            }
+            nameOffsets[axis] = halfAdvance(names[axis]);
+            maxOffsets[axis] = halfAdvance(maxes[axis]);
+            minOffsets[axis] = halfAdvance(mins[axis]);
+        }
+    }
+
+    // A band by its first member and how many follow it, its members are not a range of the dataset after a reorder
+    protected static String bandName(Dataset data, int[] members) {
+        return data.getAttributeName(members[0]) + " +" + (members.length - 1);
+    }
+
+    private static float halfAdvance(GlyphVector glyphs) {
+        return (float) glyphs.getLogicalBounds().getWidth() / 2;
+    }
+
+    // Labels stay valid until the view, the font or the rendering context changes
+    protected boolean matches(AxisView view, Font font, FontRenderContext context) {
+        return this.view == view && this.font.equals(font) && this.context.equals(context);
+    }
+
+    protected void draw(Graphics2D g, PlotGeometry geometry, Color color) {
+        g.setColor(color);
+        drawRow(g, geometry, names, nameOffsets, NAME_BASELINE);
+        drawRow(g, geometry, maxes, maxOffsets, MAX_BASELINE);
+        drawRow(g, geometry, mins, minOffsets, geometry.getHeight() - MIN_BASELINE_FROM_BOTTOM);
+    }
+
+    // Draw one row of labels left to right, skipping any that would overlap the last one drawn
+    private void drawRow(Graphics2D g, PlotGeometry geometry, GlyphVector[] labels, float[] offsets, float baseline) {
+        float lastRight = Float.NEGATIVE_INFINITY;
+        for (int axis = 0; axis < labels.length; axis++) {
+            float x = geometry.getAxisX(axis) - offsets[axis];
+            if (x < lastRight + LABEL_GAP) {
+                continue;
+            }
+            g.drawGlyphVector(labels[axis], x, baseline);
+            lastRight = x + 2 * offsets[axis];
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package javaPC;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.IntStream;
+
+/**
+ * Axis order that keeps correlated attributes next to each other. Lines between two axes cross once for
+ * every pair of rows the axes rank in opposite order, so the more positively correlated neighbours are, the
+ * fewer crossings. The order is a short path through the correlation matrix: greedy edges, then 2-opt.
+ */
+public class AxisOrdering {
+
+    // columns per tile and rows per block, two tiles of one block of centered values stay in the L2 cache
+    private static final int TILE = 16;
+    private static final int BLOCK = 2048;
+    // 2-opt passes over the path, each one is quadratic in the attribute count
+    private static final int MAX_PASSES = 50;
+
+    /**
+     * Pearson correlation of every pair of attributes over the dataset's current rows. Each fork-join task
+     * takes a pair of column tiles and walks the rows in blocks, centering the block's values of both tiles
+     * once and then taking every dot product between them while they are in cache. Columns are read two
+     * batches of columnsPerBatch at a time, one batch against each later one, so a dataset read on demand
+     * never holds more than its cache budget however wide it is.
+     */
+    protected static double[][] correlations(Dataset data, int columnsPerBatch) {
+        int rowCount = data.getRowCount();
+        int columnCount = data.getAttributeCount();
+        int batch = Math.max(1, Math.min(columnCount, columnsPerBatch));
+        // only the two batches being correlated are held, the other entries stay null
+        float[][] columns = new float[columnCount][];
+        double[] means = new double[columnCount];
+        boolean[] centered = new boolean[columnCount];
+        double[][] covariance = new double[columnCount][columnCount];
+        for (int firstA = 0; firstA < columnCount; firstA += batch) {
+            int endA = Math.min(columnCount, firstA + batch);
+            readBatch(data, firstA, endA, columns, means, centered);
+            for (int firstB = firstA; firstB < columnCount; firstB += batch) {
+                int endB = Math.min(columnCount, firstB + batch);
+                if (firstB != firstA) {
+                    readBatch(data, firstB, endB, columns, means, centered);
+                }
+                accumulateBatches(columns, means, rowCount, firstA, endA, firstB, endB, covariance);
+                if (firstB != firstA) {
+                    Arrays.fill(columns, firstB, endB, null);
+                }
+            }
+            Arrays.fill(columns, firstA, endA, null);
+        }
+
+        double[][] correlation = new double[columnCount][columnCount];
+        for (int a = 0; a < columnCount; a++) {
+            for (int b = a; b < columnCount; b++) {
+                double scale = Math.sqrt(covariance[a][a] * covariance[b][b]);
+                // a constant attribute says nothing about its neighbours, neither does one holding NaN
+                double r = a == b ? 1 : scale > 0 ? covariance[a][b] / scale : 0;
+                r = Double.isNaN(r) ? 0 : r;
+                correlation[a][b] = r;
+                correlation[b][a] = r;
+            }
+        }
+        return correlation;
+    }
+
+    // Columns [first, end) of the dataset, parsed in one pass when read on demand, and their means the first time
+    private static void readBatch(Dataset data, int first, int end, float[][] columns, double[] means, boolean[] known) {
+        float[][] read = data.getColumns(IntStream.range(first, end).toArray());
+        System.arraycopy(read, 0, columns, first, read.length);
+        int rowCount = data.getRowCount();
+        IntStream.range(first, end).parallel().filter(col -> !known[col]).forEach(col -> {
+            double sum = 0;
+            for (int row = 0; row < rowCount; row++) {
+                sum += columns[col][row];
+            }
+            means[col] = rowCount > 0 ? sum / rowCount : 0;
+            known[col] = true;
+        });
+    }
+
+    // Tile pairs between column batches [firstA, endA) and [firstB, endB), each tile pair once when they are the same
+    private static void accumulateBatches(float[][] columns, double[] means, int rowCount, int firstA, int endA,
+            int firstB, int endB, double[][] covariance) {
+        List<RecursiveAction> tasks = new ArrayList<>();
+        for (int tileA = firstA; tileA < endA; tileA += TILE) {
+            for (int tileB = firstA == firstB ? tileA : firstB; tileB < endB; tileB += TILE) {
+                int startA = tileA;
+                int startB = tileB;
+                int stopA = Math.min(endA, tileA + TILE);
+                int stopB = Math.min(endB, tileB + TILE);
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        accumulateTiles(columns, means, rowCount, startA, stopA, startB, stopB, covariance);
+                    }
+                });
+            }
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    // Sums of products of centered values for the column pairs of two tiles, the upper triangle when they are the same
+    private static void accumulateTiles(float[][] columns, double[] means, int rowCount, int tileA, int endA,
+            int tileB, int endB, double[][] covariance) {
+        float[][] centeredA = new float[endA - tileA][BLOCK];
+        float[][] centeredB = tileA == tileB ? centeredA : new float[endB - tileB][BLOCK];
+        double[][] sums = new double[endA - tileA][endB - tileB];
+        for (int from = 0; from < rowCount; from += BLOCK) {
+            int count = Math.min(BLOCK, rowCount - from);
+            center(columns, means, tileA, endA, from, count, centeredA);
+            if (centeredB != centeredA) {
+                center(columns, means, tileB, endB, from, count, centeredB);
+            }
+            for (int a = tileA; a < endA; a++) {
+                for (int b = tileA == tileB ? a : tileB; b < endB; b++) {
+                    sums[a - tileA][b - tileB] += dot(centeredA[a - tileA], centeredB[b - tileB], count);
+                }
+            }
+        }
+        // every task owns its cells, so they are written without locking
+        for (int a = tileA; a < endA; a++) {
+            for (int b = tileA == tileB ? a : tileB; b < endB; b++) {
+                covariance[a][b] = sums[a - tileA][b - tileB];
+            }
+        }
+    }
+
+    private static void center(float[][] columns, double[] means, int first, int end, int from, int count, float[][] centered) {
+        for (int col = first; col < end; col++) {
+            float[] values = columns[col];
+            float[] target = centered[col - first];
+            float mean = (float) means[col];
+            for (int i = 0; i < count; i++) {
+                target[i] = values[from + i] - mean;
+            }
+        }
+    }
+
+    // Four independent sums, so the adds are not one long dependency chain; a block is short enough for floats
+    private static double dot(float[] a, float[] b, int count) {
+        float sum0 = 0;
+        float sum1 = 0;
+        float sum2 = 0;
+        float sum3 = 0;
+        int i = 0;
+        for (; i + 3 < count; i += 4) {
+            sum0 += a[i] * b[i];
+            sum1 += a[i + 1] * b[i + 1];
+            sum2 += a[i + 2] * b[i + 2];
+            sum3 += a[i + 3] * b[i + 3];
+        }
+        for (; i < count; i++) {
+            sum0 += a[i] * b[i];
+        }
+        return (double) sum0 + sum1 + sum2 + sum3;
+    }
+
+    /**
+     * Display order visiting every attribute once with the highest total correlation between neighbours.
+     * Edges are taken greedily from the most correlated pair down as long as they extend a path, then
+     * 2-opt reverses sections of it while that raises the total.
+     */
+    protected static int[] order(double[][] correlation) {
+        int n = correlation.length;
+        if (n < 3) {
+            return IntStream.range(0, n).toArray();
+        }
+        // pairs by correlation, the float's ordered bits above the pair's index so one primitive sort does it
+        long[] byWeight = new long[n * (n - 1) / 2];
+        int[] pairA = new int[byWeight.length];
+        int[] pairB = new int[byWeight.length];
+        int pair = 0;
+        for (int a = 0; a < n; a++) {
+            for (int b = a + 1; b < n; b++) {
+                int bits = Float.floatToIntBits((float) correlation[a][b]);
+                int ordered = bits ^ ((bits >> 31) & 0x7FFFFFFF);
+                byWeight[pair] = ((long) ordered << 32) | pair;
+                pairA[pair] = a;
+                pairB[pair] = b;
+                pair++;
+            }
+        }
+        Arrays.sort(byWeight);
+
+        // greedy path cover: every attribute gets at most two neighbours and no edge closes a cycle
+        int[] degree = new int[n];
+        int[][] neighbours = new int[n][2];
+        int[] component = IntStream.range(0, n).toArray();
+        int edges = 0;
+        for (int i = byWeight.length - 1; i >= 0; i--) {
+            int a = pairA[(int) byWeight[i]];
+            int b = pairB[(int) byWeight[i]];
+            if (degree[a] < 2 && degree[b] < 2 && find(component, a) != find(component, b)) {
+                component[find(component, a)] = find(component, b);
+                neighbours[a][degree[a]++] = b;
+                neighbours[b][degree[b]++] = a;
+                if (++edges == n - 1) {
+                    break;
+                }
+            }
+        }
+
+        // walk the path from one of its ends
+        int[] path = new int[n];
+        int current = 0;
+        while (degree[current] == 2) {
+            current++;
+        }
+        int previous = -1;
+        for (int i = 0; i < n; i++) {
+            path[i] = current;
+            int next = -1;
+            for (int k = 0; k < degree[current]; k++) {
+                if (neighbours[current][k] != previous) {
+                    next = neighbours[current][k];
+                }
+            }
+            previous = current;
+            current = next;
+        }
+        improve(path, correlation);
+        return path;
+    }
+
+    // 2-opt on an open path: reversing path[i..j] replaces the edges entering and leaving that section
+    private static void improve(int[] path, double[][] correlation) {
+        int n = path.length;
+        for (int pass = 0; pass < MAX_PASSES; pass++) {
+            boolean improved = false;
+            for (int i = 0; i < n - 1; i++) {
+                for (int j = i + 1; j < n; j++) {
+                    double before = 0;
+                    double after = 0;
+                    if (i > 0) {
+                        before += correlation[path[i - 1]][path[i]];
+                        after += correlation[path[i - 1]][path[j]];
+                    }
+                    if (j < n - 1) {
+                        before += correlation[path[j]][path[j + 1]];
+                        after += correlation[path[i]][path[j + 1]];
+                    }
+                    if (after > before + 1e-12) {
+                        for (int left = i, right = j; left < right; left++, right--) {
+                            int swap = path[left];
+                            path[left] = path[right];
+                            path[right] = swap;
+                        }
+                        improved = true;
+                    }
+                }
+            }
+            if (!improved) {
+                return;
+            }
+        }
+    }
+
+    private static int find(int[] component, int node) {
+        while (component[node] != node) {
+            component[node] = component[component[node]];
+            node = component[node];
+        }
+        return node;
+    }
+}
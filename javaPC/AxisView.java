@@ -0,0 +1,163 @@
+package javaPC;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * The axes actually drawn: a zoomed range of attributes in display order, with adjacent attributes
+ * aggregated into summary bands whenever they would sit closer than a few pixels apart
+ */
+public class AxisView {
+
+    // Attributes closer together than this are merged into bands
+    protected static final int MIN_AXIS_SPACING = 8;
+
+    private final PlotModel model;
+    private final int[] order;
+    private final int first;
+    private final int count;
+    private final int width;
+    private final int groupSize;
+
+    // per slot: first and one past the last position in order, and the normalized values drawn
+    private final int[] slotStart;
+    private final int[] slotEnd;
+    private final float[][] slotValues;
+
+    /**
+     * @param order display order of the attributes
+     * @param first first visible position in the order
+     * @param count number of visible positions
+     * @param width pixel width the slots are laid out in
+     */
+    protected AxisView(PlotModel model, int[] order, int first, int count, int width) {
+        this.model = model;
+        this.order = order;
+        this.first = first;
+        this.count = count;
+        this.width = width;
+
+        // attributes share the width with the class column slot, as in PlotGeometry
+        int maxSlots = Math.max(1, width / MIN_AXIS_SPACING - 1);
+        this.groupSize = count <= maxSlots ? 1 : (count + maxSlots - 1) / maxSlots;
+
+        int slotCount = (count + groupSize - 1) / groupSize;
+        slotStart = new int[slotCount];
+        slotEnd = new int[slotCount];
+        slotValues = new float[slotCount][];
+        for (int slot = 0; slot < slotCount; slot++) {
+            slotStart[slot] = first + slot * groupSize;
+            slotEnd[slot] = Math.min(first + count, slotStart[slot] + groupSize);
+        }
+        // a dataset read on demand parses the visible attributes a batch of slots at a time, one pass over the file each
+        int batch = model.getColumnsPerBatch();
+        for (int firstSlot = 0; firstSlot < slotCount; ) {
+            int endSlot = firstSlot + 1;
+            while (endSlot < slotCount && slotEnd[endSlot] - slotStart[firstSlot] <= batch) {
+                endSlot++;
+            }
+            model.getNormalized(Arrays.copyOfRange(order, slotStart[firstSlot], slotEnd[endSlot - 1]));
+            IntStream.range(firstSlot, endSlot).parallel().forEach(slot -> slotValues[slot] = aggregate(slot));
+            firstSlot = endSlot;
+        }
+    }
+
+    // A band's polyline vertex is the mean of its attributes' normalized values
+    private float[] aggregate(int slot) {
+        if (slotEnd[slot] - slotStart[slot] == 1) {
+            return model.getNormalized(order[slotStart[slot]]);
+        }
+        float[] mean = new float[model.getNormalized(order[slotStart[slot]]).length];
+        averageRows(slot, mean, 0, model.getDataset().getRowCount());
+        return mean;
+    }
+
+    private void averageRows(int slot, float[] mean, int from, int to) {
+        Arrays.fill(mean, from, to, 0);
+        for (int position = slotStart[slot]; position < slotEnd[slot]; position++) {
+            float[] values = model.getNormalized(order[position]);
+            for (int row = from; row < to; row++) {
+                mean[row] += values[row];
+            }
+        }
+        float scale = 1.0f / (slotEnd[slot] - slotStart[slot]);
+        for (int row = from; row < to; row++) {
+            mean[row] *= scale;
+        }
+    }
+
+    /**
+     * Follow rows [from, to) the model appended without rescaling. Single attribute slots pick up the
+     * model's arrays again since they may have grown, bands average just the new rows.
+     */
+    protected void appendRows(int from, int to) {
+        IntStream.range(0, slotValues.length).parallel().forEach(slot -> {
+            if (!isBand(slot)) {
+                slotValues[slot] = model.getNormalized(order[slotStart[slot]]);
+                return;
+            }
+            float[] mean = slotValues[slot];
+            if (mean.length < to) {
+                mean = Arrays.copyOf(mean, model.getNormalized(order[slotStart[slot]]).length);
+            }
+            averageRows(slot, mean, from, to);
+            slotValues[slot] = mean;
+        });
+    }
+
+    public PlotModel getModel() {
+        return model;
+    }
+
+    public int[] getOrder() {
+        return order;
+    }
+
+    public int getFirst() {
+        return first;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public boolean isAggregated() {
+        return groupSize > 1;
+    }
+
+    public int getSlotCount() {
+        return slotValues.length;
+    }
+
+    public float[] getSlotValues(int slot) {
+        return slotValues[slot];
+    }
+
+    public boolean isBand(int slot) {
+        return slotEnd[slot] - slotStart[slot] > 1;
+    }
+
+    // Attribute index shown by a single attribute slot, or the band's first attribute
+    public int getAttribute(int slot) {
+        return order[slotStart[slot]];
+    }
+
+    // Attributes of the slot in display order, a band's need not be neighbours in the dataset after a reorder
+    public int[] getAttributes(int slot) {
+        return Arrays.copyOfRange(order, slotStart[slot], slotEnd[slot]);
+    }
+
+    // Position in the display order of the slot under an x pixel, clamped to the visible slots
+    protected int slotAt(PlotGeometry geometry, int x) {
+        int slot = Math.round((float) x / geometry.getLineSpacing()) - 1;
+        return Math.max(0, Math.min(getSlotCount() - 1, slot));
+    }
+
+    protected int positionOf(int slot) {
+        return slotStart[slot];
+    }
+}
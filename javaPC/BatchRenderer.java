@@ -0,0 +1,348 @@
+package javaPC;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+import javax.swing.UIManager;
+
+/**
+ * Headless command line renderer, draws each CSV through PlotPanel into a PNG with files rendered concurrently
+ */
+public class BatchRenderer {
+
+    // rows of the overview an out of core render keeps in memory for its axes and labels, unless --sample is given
+    private static final int OVERVIEW_ROWS = 100_000;
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: java -jar Parallel-Coordinates-Vis.jar [options] file.csv...",
+            "  --out DIR                 directory for the PNGs, defaults to each CSV's directory",
+            "  --size WIDTHxHEIGHT       image size, defaults to 1600x750",
+            "  --mode MODE               java2d, parallel-raster, density-log, density-linear or bundles",
+            "  --quality PROFILE         java2d rendering hints: speed, antialias or quality, defaults to quality",
+            "  --alpha VALUE             line opacity from 0 to 1",
+            "  --background #RRGGBB      background color",
+            "  --axis-color #RRGGBB      axis and label color",
+            "  --class-color NAME=#RRGGBB  color of one class, may be repeated",
+            "  --histogram STYLE         off, vertices or bars",
+            "  --bins COUNT              histogram bin count",
+            "  --no-labels               leave out axis names and ranges",
+            "  --order-axes              place correlated attributes next to each other",
+            "  --sample ROWS             draw a class stratified sample of about ROWS rows of each file",
+            "  --brush NAME=MIN:MAX      select rows with the attribute between MIN and MAX, may be repeated",
+            "  --out-of-core             convert each file to column chunks on disk and stream every row through",
+            "                            the density mode, for files larger than the heap",
+            "  --threads COUNT           files rendered at once, defaults to the number of cores",
+            "  --metrics FILE            write load, normalize and draw timings and cache counts of the run as JSON");
+
+    private File outputDirectory;
+    private int width = 1600;
+    private int height = 750;
+    private RenderMode renderMode = RenderMode.JAVA2D;
+    private RenderQuality renderQuality = RenderQuality.QUALITY;
+    private float alpha = 1.0f;
+    private Color backgroundColor = Color.GRAY;
+    private Color axisColor = Color.BLACK;
+    private final Map<String, Color> classColors = new LinkedHashMap<>();
+    private AxisHistogram.Style histogramStyle = AxisHistogram.Style.OFF;
+    private int histogramBins = AxisHistogram.DEFAULT_BINS;
+    private boolean showAxisNames = true;
+    private boolean orderAxes;
+    private int sampleRows;  // 0 draws every row
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private final Map<String, float[]> brushes = new LinkedHashMap<>();
+    private boolean outOfCore;
+    private final List<File> inputs = new ArrayList<>();
+    private File metricsFile;
+
+    public static void main(String[] args) {
+        System.exit(run(args));
+    }
+
+    // Returns the process exit code: 0 when every file was written, 1 when any failed, 2 for bad arguments
+    protected static int run(String[] args) {
+        // no window is ever opened, so AWT must not look for a display
+        if (System.getProperty("java.awt.headless") == null) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        BatchRenderer batch = new BatchRenderer();
+        try {
+            batch.parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            return 2;
+        }
+        return batch.renderAll();
+    }
+
+    private void parseArguments(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("--")) {
+                inputs.add(new File(arg));
+                continue;
+            }
+            if (arg.equals("--no-labels")) {
+                showAxisNames = false;
+                continue;
+            }
+            if (arg.equals("--order-axes")) {
+                orderAxes = true;
+                continue;
+            }
+            if (arg.equals("--out-of-core")) {
+                outOfCore = true;
+                continue;
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value for " + arg);
+            }
+            String value = args[++i];
+            switch (arg) {
+                case "--out":
+                    outputDirectory = new File(value);
+                    break;
+                case "--size":
+                    String[] size = value.toLowerCase(Locale.ROOT).split("x");
+                    if (size.length != 2) {
+                        throw new IllegalArgumentException("Size must look like 1600x750: " + value);
+                    }
+                    width = parsePositive(arg, size[0]);
+                    height = parsePositive(arg, size[1]);
+                    break;
+                case "--mode":
+                    renderMode = parseEnum(RenderMode.class, arg, value);
+                    break;
+                case "--quality":
+                    renderQuality = parseEnum(RenderQuality.class, arg, value);
+                    break;
+                case "--alpha":
+                    alpha = Float.parseFloat(value);
+                    if (!(alpha >= 0 && alpha <= 1)) {
+                        throw new IllegalArgumentException("Alpha must be between 0 and 1: " + value);
+                    }
+                    break;
+                case "--background":
+                    backgroundColor = parseColor(value);
+                    break;
+                case "--axis-color":
+                    axisColor = parseColor(value);
+                    break;
+                case "--class-color":
+                    int split = value.lastIndexOf('=');
+                    if (split <= 0) {
+                        throw new IllegalArgumentException("Class color must look like NAME=#RRGGBB: " + value);
+                    }
+                    classColors.put(value.substring(0, split), parseColor(value.substring(split + 1)));
+                    break;
+                case "--histogram":
+                    histogramStyle = parseEnum(AxisHistogram.Style.class, arg, value);
+                    break;
+                case "--bins":
+                    histogramBins = parsePositive(arg, value);
+                    break;
+                case "--sample":
+                    sampleRows = parsePositive(arg, value);
+                    break;
+                case "--brush":
+                    brushes.put(parseBrushName(value), parseBrushRange(value));
+                    break;
+                case "--threads":
+                    threads = parsePositive(arg, value);
+                    break;
+                case "--metrics":
+                    metricsFile = new File(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (inputs.isEmpty()) {
+            throw new IllegalArgumentException("No CSV files given");
+        }
+    }
+
+    private static int parsePositive(String option, String value) {
+        try {
+            int parsed = Integer.parseInt(value.trim());
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException(option + " needs a positive whole number: " + value);
+    }
+
+    private static String parseBrushName(String value) {
+        int split = value.lastIndexOf('=');
+        if (split <= 0) {
+            throw new IllegalArgumentException("Brush must look like NAME=MIN:MAX: " + value);
+        }
+        return value.substring(0, split);
+    }
+
+    private static float[] parseBrushRange(String value) {
+        String[] range = value.substring(value.lastIndexOf('=') + 1).split(":");
+        try {
+            if (range.length == 2) {
+                return new float[] {Float.parseFloat(range[0].trim()), Float.parseFloat(range[1].trim())};
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new IllegalArgumentException("Brush must look like NAME=MIN:MAX: " + value);
+    }
+
+    // Accepts the constant name in any case, with dashes for underscores
+    private static <E extends Enum<E>> E parseEnum(Class<E> type, String option, String value) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown value for " + option + ": " + value);
+        }
+    }
+
+    private static Color parseColor(String value) {
+        try {
+            return Color.decode(value.startsWith("#") ? value : "#" + value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Colors must look like #RRGGBB: " + value);
+        }
+    }
+
+    // Render every input on a bounded pool, a failed file is reported and the rest carry on
+    private int renderAll() {
+        // set up the look and feel once, before workers build panels concurrently
+        UIManager.getFont("Label.font");
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, inputs.size()));
+        List<Future<String>> results = new ArrayList<>();
+        for (File input : inputs) {
+            results.add(pool.submit(() -> render(input)));
+        }
+        pool.shutdown();
+        int failures = collect(results);
+        if (metricsFile != null) {
+            try {
+                // counted over every file of the run, including those that failed
+                Files.writeString(metricsFile.toPath(), Metrics.toJson());
+            } catch (IOException e) {
+                System.err.println("Could not write metrics to " + metricsFile + ": " + e.getMessage());
+                return 1;
+            }
+        }
+        return failures == 0 ? 0 : 1;
+    }
+
+    // Print each file's result in input order, returning how many failed
+    private int collect(List<Future<String>> results) {
+        int failures = 0;
+        for (int i = 0; i < results.size(); i++) {
+            try {
+                System.out.println(results.get(i).get());
+            } catch (ExecutionException e) {
+                failures++;
+                System.err.println(inputs.get(i) + ": " + describe(e.getCause()));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return failures + 1;
+            }
+        }
+        return failures;
+    }
+
+    private static String describe(Throwable error) {
+        if (error instanceof NumberFormatException) {
+            return "dataset contains non-numeric values or class column is not last column";
+        }
+        return error.getMessage() != null ? error.getMessage() : error.toString();
+    }
+
+    private String render(File input) throws IOException {
+        long start = System.nanoTime();
+        ChunkStore store = outOfCore ? ChunkStore.openOrConvert(input) : null;
+        Dataset data;
+        if (store != null) {
+            data = store.readOverview(sampleRows > 0 ? sampleRows : OVERVIEW_ROWS);
+        } else {
+            data = sampleRows > 0 ? CsvParser.readSampledDataset(input, sampleRows) : CsvParser.readDataset(input);
+        }
+        BufferedImage image = renderImage(data, store);
+
+        File directory = outputDirectory != null ? outputDirectory : input.getAbsoluteFile().getParentFile();
+        String name = input.getName();
+        int extension = name.lastIndexOf('.');
+        File output = new File(directory, (extension > 0 ? name.substring(0, extension) : name) + ".png");
+        if (!ImageIO.write(image, "png", output)) {
+            throw new IOException("No PNG writer available");
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        long rows = store != null ? store.getRowCount() : data.getRowCount();
+        return output + " (" + rows + " rows, " + millis + " ms)";
+    }
+
+    protected BufferedImage renderImage(Dataset data) {
+        return renderImage(data, null);
+    }
+
+    /**
+     * Same drawing as the window, painted synchronously into an image instead of the screen. With a store, data
+     * is its overview and the density is drawn from every row of the store, in the log density mode unless the
+     * mode asked for is a density mode.
+     */
+    protected BufferedImage renderImage(Dataset data, ChunkStore store) {
+        PlotPanel panel = new PlotPanel(data);
+        panel.setBorder(null);
+        panel.setProgressiveRendering(false);
+        // every worker sets the look on its own panel
+        panel.setBackgroundColor(backgroundColor);
+        panel.setAxisColor(axisColor);
+        panel.setRenderMode(store == null || renderMode.isDensity() ? renderMode : RenderMode.DENSITY_LOG);
+        panel.setChunkStore(store);
+        panel.setRenderQuality(renderQuality);
+        panel.setHistogramStyle(histogramStyle);
+        panel.setHistogramBins(histogramBins);
+        panel.setShowAxisNames(showAxisNames);
+        if (orderAxes) {
+            panel.setAxisOrder(panel.findCorrelatedAxisOrder());
+        }
+        for (Map.Entry<String, Color> entry : classColors.entrySet()) {
+            if (data.getClassNames().contains(entry.getKey())) {
+                panel.setClassColor(entry.getKey(), entry.getValue());
+            }
+        }
+        panel.setAlpha(alpha);
+        panel.setSize(width, height);
+        // brushes name attributes, a file without one is drawn unbrushed on it
+        for (Map.Entry<String, float[]> brush : brushes.entrySet()) {
+            for (int col = 0; col < data.getAttributeCount(); col++) {
+                if (data.getAttributeName(col).equals(brush.getKey())) {
+                    panel.setBrush(col, brush.getValue()[0], brush.getValue()[1]);
+                }
+            }
+        }
+
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        // there are no desktop font hints without a display
+        g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        panel.paint(g);
+        g.dispose();
+        return image;
+    }
+}
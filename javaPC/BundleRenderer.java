@@ -0,0 +1,169 @@
+package javaPC;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Draws clusters of polylines instead of rows: for each cluster a faint band from the lowest to the highest
+ * value its rows reach on every axis, a denser band one standard deviation around their means and a line
+ * through the means, all more opaque the more rows the cluster holds. Rows only
+ * add to per cluster statistics, so drawing costs as much as the number of clusters, whatever the row count.
+ */
+public class BundleRenderer {
+
+    // opacity of the envelope, the deviation band and the centroid line, from the smallest cluster to the largest
+    private static final float MIN_ENVELOPE_OPACITY = 0.04f;
+    private static final float MAX_ENVELOPE_OPACITY = 0.2f;
+    private static final float MIN_CORE_OPACITY = 0.1f;
+    private static final float MAX_CORE_OPACITY = 0.45f;
+    private static final float MIN_LINE_OPACITY = 0.35f;
+    private static final BasicStroke CENTROID_STROKE = new BasicStroke(2f, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
+
+    private final PlotGeometry geometry;
+    private final AxisView view;
+    private final RowClusters clusters;
+    private final List<Group> groups = new ArrayList<>();
+
+    protected BundleRenderer(PlotGeometry geometry, AxisView view, RowClusters clusters) {
+        this.geometry = geometry;
+        this.view = view;
+        this.clusters = clusters;
+    }
+
+    /**
+     * Rows drawn in one set of class colors, statistics are kept apart per group. Groups are drawn in the
+     * order they were added, so faint rows go first.
+     */
+    protected Group addGroup(Color[] colors) {
+        Group group = new Group(colors);
+        groups.add(group);
+        return group;
+    }
+
+    // Clear the layer and draw every group's clusters, the largest first so small ones stay visible
+    protected void resolve(BufferedImage layer) {
+        ParallelRasterizer.clear(layer);
+        int slotCount = geometry.getAxisCount();
+        if (slotCount == 0) {
+            return;
+        }
+        int[] xs = new int[slotCount * 2];
+        int[] ys = new int[slotCount * 2];
+        Graphics2D g = layer.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        g.setStroke(CENTROID_STROKE);
+        for (Group group : groups) {
+            if (group.counts == null) {
+                continue;
+            }
+            // cluster counts above their indexes, so one primitive sort orders them by size
+            long[] bySize = new long[group.counts.length];
+            for (int cluster = 0; cluster < bySize.length; cluster++) {
+                bySize[cluster] = group.counts[cluster] << 32 | cluster;
+            }
+            Arrays.sort(bySize);
+            long maxCount = bySize.length == 0 ? 0 : bySize[bySize.length - 1] >>> 32;
+            for (int i = bySize.length - 1; i >= 0 && bySize[i] >>> 32 > 0; i--) {
+                int cluster = (int) bySize[i];
+                long count = bySize[i] >>> 32;
+                Color color = group.colors[clusters.getClassId(cluster)];
+                float weight = (float) count / maxCount;
+                float opacity = color.getAlpha() / 255f;
+                int base = cluster * slotCount;
+
+                // each band runs along its upper edge and back along its lower one
+                for (int slot = 0; slot < slotCount; slot++) {
+                    xs[slot] = geometry.getAxisX(slot);
+                    ys[slot] = geometry.toY(group.maxes[base + slot]);
+                    xs[slotCount * 2 - 1 - slot] = xs[slot];
+                    ys[slotCount * 2 - 1 - slot] = geometry.toY(group.mins[base + slot]);
+                }
+                g.setColor(withOpacity(color, opacity * (MIN_ENVELOPE_OPACITY + (MAX_ENVELOPE_OPACITY - MIN_ENVELOPE_OPACITY) * weight)));
+                g.fillPolygon(xs, ys, slotCount * 2);
+
+                for (int slot = 0; slot < slotCount; slot++) {
+                    double mean = group.sums[base + slot] / count;
+                    double deviation = Math.sqrt(Math.max(0, group.squares[base + slot] / count - mean * mean));
+                    ys[slot] = geometry.toY((float) Math.min(group.maxes[base + slot], mean + deviation));
+                    ys[slotCount * 2 - 1 - slot] = geometry.toY((float) Math.max(group.mins[base + slot], mean - deviation));
+                }
+                g.setColor(withOpacity(color, opacity * (MIN_CORE_OPACITY + (MAX_CORE_OPACITY - MIN_CORE_OPACITY) * weight)));
+                g.fillPolygon(xs, ys, slotCount * 2);
+
+                for (int slot = 0; slot < slotCount; slot++) {
+                    ys[slot] = geometry.toY((float) (group.sums[base + slot] / count));
+                }
+                g.setColor(withOpacity(color, opacity * (MIN_LINE_OPACITY + (1 - MIN_LINE_OPACITY) * weight)));
+                g.drawPolyline(xs, ys, slotCount);
+            }
+        }
+        g.dispose();
+    }
+
+    private static Color withOpacity(Color color, float opacity) {
+        return new Color(color.getRed(), color.getGreen(), color.getBlue(), Math.max(1, Math.round(opacity * 255)));
+    }
+
+    /**
+     * Per cluster row count and, per cluster and slot, the lowest, highest, summed and summed squared
+     * normalized value of the group's rows. Sized once the clusters are fitted by the first rows added.
+     */
+    protected class Group {
+        private final Color[] colors;
+        private long[] counts;
+        private float[] mins;
+        private float[] maxes;
+        private double[] sums;
+        private double[] squares;
+
+        private Group(Color[] colors) {
+            this.colors = colors;
+        }
+
+        // Add rows[from, to) to their clusters, a null rows array means rows from to to in order
+        protected void accumulate(int[] rows, int from, int to) {
+            int[] members = clusters.assign(rows, from, to);
+            int slotCount = view.getSlotCount();
+            if (counts == null) {
+                int clusterCount = clusters.getClusterCount();
+                counts = new long[clusterCount];
+                mins = new float[clusterCount * slotCount];
+                maxes = new float[clusterCount * slotCount];
+                sums = new double[clusterCount * slotCount];
+                squares = new double[clusterCount * slotCount];
+                Arrays.fill(mins, Float.MAX_VALUE);
+                Arrays.fill(maxes, -Float.MAX_VALUE);
+            }
+            for (int i = from; i < to; i++) {
+                int cluster = members[rows == null ? i : rows[i]];
+                if (cluster >= 0) {
+                    counts[cluster]++;
+                }
+            }
+            // slots are independent, each task updates the cells of its own slot
+            IntStream.range(0, slotCount).parallel().forEach(slot -> {
+                float[] values = view.getSlotValues(slot);
+                for (int i = from; i < to; i++) {
+                    int row = rows == null ? i : rows[i];
+                    int cluster = members[row];
+                    if (cluster < 0) {
+                        continue;
+                    }
+                    int cell = cluster * slotCount + slot;
+                    float value = values[row];
+                    mins[cell] = Math.min(mins[cell], value);
+                    maxes[cell] = Math.max(maxes[cell], value);
+                    sums[cell] += value;
+                    squares[cell] += (double) value * value;
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package javaPC;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.stream.IntStream;
+
+/**
+ * Draws every row of a chunk store into a density accumulation a group of chunks at a time, so the heap only
+ * ever holds as many chunks as the chunk budget allows whatever the store's size. The chunks of a group are
+ * read and normalized in parallel, then accumulated one after another by the strip parallel rasterizer.
+ * Chunks whose summary shows no row inside the brushes are never read.
+ */
+public class ChunkRenderer {
+
+    private final ChunkStore store;
+    // visible attributes in display order, and every attribute read from a chunk: the visible ones, then brushed ones
+    private final int[] visible;
+    private final int[] columns;
+    private final int width;
+    // brushed attributes as positions in columns, and their raw {min, max}
+    private final int[] brushPositions;
+    private final float[][] brushRanges;
+    private final String[] header;
+    private final float[][] ranges;
+
+    /**
+     * @param order display order of the attributes
+     * @param first first visible position in the order
+     * @param count number of visible positions
+     * @param width pixel width the axes are laid out in, as for AxisView
+     * @param brushes raw {min, max} by attribute, rows must lie inside all of them
+     */
+    protected ChunkRenderer(ChunkStore store, int[] order, int first, int count, int width, Map<Integer, float[]> brushes) {
+        this.store = store;
+        this.visible = Arrays.copyOfRange(order, first, first + count);
+        this.width = width;
+
+        int[] read = Arrays.copyOf(visible, count + brushes.size());
+        int readCount = count;
+        brushPositions = new int[brushes.size()];
+        brushRanges = new float[brushes.size()][];
+        int brush = 0;
+        for (Map.Entry<Integer, float[]> entry : brushes.entrySet()) {
+            int position = indexOf(read, readCount, entry.getKey());
+            if (position < 0) {
+                position = readCount;
+                read[readCount++] = entry.getKey();
+            }
+            brushPositions[brush] = position;
+            brushRanges[brush++] = entry.getValue().clone();
+        }
+        columns = Arrays.copyOf(read, readCount);
+
+        // each chunk is a dataset of just the visible attributes, scaled to the ranges of the whole store
+        String[] names = store.getHeader();
+        header = new String[count + 1];
+        ranges = new float[count][];
+        for (int i = 0; i < count; i++) {
+            header[i] = names[visible[i]];
+            ranges[i] = store.getRange(visible[i]);
+        }
+        header[count] = names[names.length - 1];
+    }
+
+    private static int indexOf(int[] values, int length, int value) {
+        for (int i = 0; i < length; i++) {
+            if (values[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Accumulate the selected rows of every chunk, colored by class. Returns false when cancelled says to stop,
+     * which is checked before each group of chunks.
+     */
+    protected boolean accumulate(DensityRenderer density, int[] classColors, BooleanSupplier cancelled) throws IOException {
+        // raw and normalized values of each column read, a class id and a selected row index per row
+        long bytesPerRow = 4L * (columns.length + visible.length) + 8;
+        long budget = ChunkStore.getBudget();
+        List<Integer> group = new ArrayList<>();
+        long groupBytes = 0;
+        for (int chunk = 0; chunk < store.getChunkCount(); chunk++) {
+            if (isExcluded(chunk)) {
+                Metrics.add(Metrics.CHUNKS_SKIPPED, 1);
+                continue;
+            }
+            long chunkBytes = bytesPerRow * store.getChunkRows(chunk);
+            if (!group.isEmpty() && groupBytes + chunkBytes > budget) {
+                if (cancelled.getAsBoolean()) {
+                    return false;
+                }
+                accumulateGroup(density, group, classColors);
+                group.clear();
+                groupBytes = 0;
+            }
+            group.add(chunk);
+            groupBytes += chunkBytes;
+        }
+        if (cancelled.getAsBoolean()) {
+            return false;
+        }
+        accumulateGroup(density, group, classColors);
+        return true;
+    }
+
+    // True when the chunk's range of a brushed attribute misses its brush, including chunks without rows
+    private boolean isExcluded(int chunk) {
+        for (int brush = 0; brush < brushRanges.length; brush++) {
+            int col = columns[brushPositions[brush]];
+            if (store.getChunkMax(chunk, col) < brushRanges[brush][0] || store.getChunkMin(chunk, col) > brushRanges[brush][1]) {
+                return true;
+            }
+        }
+        return store.getChunkRows(chunk) == 0;
+    }
+
+    // True when every row of the chunk lies inside every brush, so no row needs testing
+    private boolean isContained(int chunk) {
+        for (int brush = 0; brush < brushRanges.length; brush++) {
+            int col = columns[brushPositions[brush]];
+            if (store.getChunkMin(chunk, col) < brushRanges[brush][0] || store.getChunkMax(chunk, col) > brushRanges[brush][1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void accumulateGroup(DensityRenderer density, List<Integer> group, int[] classColors) throws IOException {
+        LoadedChunk[] loaded = new LoadedChunk[group.size()];
+        try {
+            IntStream.range(0, loaded.length).parallel().forEach(i -> {
+                try {
+                    loaded[i] = load(group.get(i));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        for (int i = 0; i < loaded.length; i++) {
+            LoadedChunk chunk = loaded[i];
+            density.accumulate(chunk.view, chunk.rows, 0, chunk.rowCount, chunk.classIds, classColors);
+            Metrics.add(Metrics.ROWS_DRAWN, chunk.rowCount);
+            loaded[i] = null;
+        }
+        Metrics.add(Metrics.CHUNKS_READ, loaded.length);
+    }
+
+    // Read the chunk's columns, pick the rows inside the brushes and normalize the visible attributes
+    private LoadedChunk load(int chunk) throws IOException {
+        float[][] values = store.readColumns(chunk, columns);
+        int[] classIds = store.readClassIds(chunk);
+        int chunkRows = store.getChunkRows(chunk);
+
+        int[] rows = null;
+        int rowCount = chunkRows;
+        if (!isContained(chunk)) {
+            rows = new int[chunkRows];
+            rowCount = 0;
+            for (int row = 0; row < chunkRows; row++) {
+                boolean selected = true;
+                for (int brush = 0; brush < brushRanges.length && selected; brush++) {
+                    float value = values[brushPositions[brush]][row];
+                    selected = value >= brushRanges[brush][0] && value <= brushRanges[brush][1];
+                }
+                if (selected) {
+                    rows[rowCount++] = row;
+                }
+            }
+        }
+
+        Dataset data = new Dataset(header, 1);
+        for (String className : store.getClassNames()) {
+            data.internClass(className);
+        }
+        data.setColumns(Arrays.copyOf(values, visible.length), classIds, chunkRows);
+        data.setKnownRanges(ranges);
+        int[] order = new int[visible.length];
+        Arrays.setAll(order, i -> i);
+        // same slot grouping as the panel's view of the same attributes
+        AxisView view = new AxisView(new PlotModel(data), order, 0, visible.length, width);
+        return new LoadedChunk(view, rows, rowCount, classIds);
+    }
+
+    /**
+     * A chunk ready to accumulate, rows is null when all of them are selected
+     */
+    private static class LoadedChunk {
+        private final AxisView view;
+        private final int[] rows;
+        private final int rowCount;
+        private final int[] classIds;
+
+        LoadedChunk(AxisView view, int[] rows, int rowCount, int[] classIds) {
+            this.view = view;
+            this.rows = rows;
+            this.rowCount = rowCount;
+            this.classIds = classIds;
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package javaPC;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * A CSV converted to binary column chunks on disk, in a NAME.csv.pcvchunks directory next to it, for files too
+ * large for the heap. Each chunk is a file of a few thousand to a few million consecutive rows holding their
+ * class ids and then one float column per attribute, so any attributes of a chunk are read by mapping just
+ * those columns. summary.bin lists every chunk with its row count, its class dictionary and the min/max of
+ * each attribute over its rows, which lets a render skip chunks a brush excludes without reading them.
+ * Like the dataset cache it is only used while the CSV has the size and modification time it was made for.
+ */
+public class ChunkStore {
+
+    private static final int MAGIC = 0x5043564B;  // "PCVK"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".pcvchunks";
+    private static final String SUMMARY = "summary.bin";
+    // text parsed per chunk when converting, between these bounds
+    private static final long MIN_CHUNK_BYTES = 4L << 20;
+    private static final long MAX_CHUNK_BYTES = 256L << 20;
+    // share of the heap chunks may take by default while converting and drawing
+    private static final int HEAP_SHARE = 4;
+
+    private final File directory;
+    private final String[] header;
+    private final List<String> classNames;
+    private final int[] chunkRows;
+    private final long[] chunkStarts;
+    // per chunk: bytes per class id and the global id of each of its local ids
+    private final int[] classIdBytes;
+    private final int[][] globalClassIds;
+    // per chunk and attribute {min, max}, flattened as chunk * attributeCount + col, and over all chunks
+    private final float[] chunkMins;
+    private final float[] chunkMaxes;
+    private final float[][] ranges;
+    private final long[] classCounts;
+
+    private ChunkStore(File directory, String[] header, List<String> classNames, int[] chunkRows, int[] classIdBytes,
+                       int[][] globalClassIds, float[] chunkMins, float[] chunkMaxes, long[] classCounts) {
+        this.directory = directory;
+        this.header = header;
+        this.classNames = classNames;
+        this.chunkRows = chunkRows;
+        this.classIdBytes = classIdBytes;
+        this.globalClassIds = globalClassIds;
+        this.chunkMins = chunkMins;
+        this.chunkMaxes = chunkMaxes;
+        this.classCounts = classCounts;
+        chunkStarts = new long[chunkRows.length + 1];
+        for (int chunk = 0; chunk < chunkRows.length; chunk++) {
+            chunkStarts[chunk + 1] = chunkStarts[chunk] + chunkRows[chunk];
+        }
+        int attributeCount = header.length - 1;
+        ranges = new float[attributeCount][];
+        for (int col = 0; col < attributeCount; col++) {
+            float min = Float.MAX_VALUE;
+            float max = -Float.MAX_VALUE;
+            for (int chunk = 0; chunk < chunkRows.length; chunk++) {
+                if (chunkRows[chunk] > 0) {
+                    min = Math.min(min, chunkMins[chunk * attributeCount + col]);
+                    max = Math.max(max, chunkMaxes[chunk * attributeCount + col]);
+                }
+            }
+            ranges[col] = getRowCount() > 0 ? new float[] {min, max} : new float[] {0, 0};
+        }
+    }
+
+    protected static File directoryFor(File csvFile) {
+        return new File(csvFile.getPath() + SUFFIX);
+    }
+
+    // Heap chunks may take at once, -DjavaPC.chunkBudgetMB or a quarter of the heap
+    protected static long getBudget() {
+        long budgetMB = Long.getLong("javaPC.chunkBudgetMB", 0);
+        return budgetMB > 0 ? budgetMB << 20 : Runtime.getRuntime().maxMemory() / HEAP_SHARE;
+    }
+
+    // The csv's store, converting the file first when it has none or the one it has no longer matches it
+    protected static ChunkStore openOrConvert(File csvFile) throws IOException {
+        ChunkStore store = open(csvFile);
+        return store != null ? store : convert(csvFile);
+    }
+
+    // The csv's store, null when it has none or the store does not match the file
+    protected static ChunkStore open(File csvFile) throws IOException {
+        File directory = directoryFor(csvFile);
+        File summary = new File(directory, SUMMARY);
+        if (!summary.isFile()) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(summary.toPath())).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION
+                    || buffer.getLong() != csvFile.length() || buffer.getLong() != csvFile.lastModified()) {
+                return null;
+            }
+            int attributeCount = buffer.getInt();
+            int classCount = buffer.getInt();
+            int chunkCount = buffer.getInt();
+            // every name, chunk and range takes at least 4 bytes, which also bounds the arrays below
+            if (attributeCount < 0 || classCount < 0 || chunkCount < 0
+                    || (long) attributeCount + classCount + chunkCount > buffer.remaining() / 4) {
+                return null;
+            }
+            String[] header = new String[attributeCount + 1];
+            for (int i = 0; i < header.length; i++) {
+                header[i] = readString(buffer);
+            }
+            List<String> classNames = new ArrayList<>(classCount);
+            for (int i = 0; i < classCount; i++) {
+                classNames.add(readString(buffer));
+            }
+            int[] chunkRows = new int[chunkCount];
+            int[] classIdBytes = new int[chunkCount];
+            int[][] globalClassIds = new int[chunkCount][];
+            float[] chunkMins = new float[chunkCount * attributeCount];
+            float[] chunkMaxes = new float[chunkCount * attributeCount];
+            long[] classCounts = new long[classCount];
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                chunkRows[chunk] = buffer.getInt();
+                classIdBytes[chunk] = buffer.getInt();
+                int labelCount = buffer.getInt();
+                if (chunkRows[chunk] < 0 || labelCount < 0 || labelCount > buffer.remaining() / 8) {
+                    return null;
+                }
+                globalClassIds[chunk] = new int[labelCount];
+                for (int label = 0; label < labelCount; label++) {
+                    int classId = buffer.getInt();
+                    if (classId < 0 || classId >= classCount) {
+                        return null;
+                    }
+                    globalClassIds[chunk][label] = classId;
+                    classCounts[classId] += buffer.getInt();
+                }
+                for (int col = 0; col < attributeCount; col++) {
+                    chunkMins[chunk * attributeCount + col] = buffer.getFloat();
+                    chunkMaxes[chunk * attributeCount + col] = buffer.getFloat();
+                }
+                // a chunk cut short by a full disk leaves the whole store unused
+                File chunkFile = chunkFile(directory, chunk);
+                if (chunkFile.length() != (long) chunkRows[chunk] * (classIdBytes[chunk] + 4L * attributeCount)) {
+                    return null;
+                }
+            }
+            return new ChunkStore(directory, header, classNames, chunkRows, classIdBytes, globalClassIds, chunkMins, chunkMaxes, classCounts);
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Convert the csv into a new store, parsing chunks in parallel and writing each to its file as soon as it
+     * is parsed, so the heap holds only a few chunks whatever the file size. The store is built in a temporary
+     * directory and moved into place once complete, replacing an outdated one.
+     */
+    protected static ChunkStore convert(File csvFile) throws IOException {
+        long csvSize = csvFile.length();
+        long csvModified = csvFile.lastModified();
+        File directory = directoryFor(csvFile);
+        File partial = new File(directory.getPath() + ".tmp");
+        deleteStore(partial);
+        Files.createDirectories(partial.toPath());
+
+        // parsed floats take at most twice the bytes of their text, one chunk per core must fit the budget
+        int parallelism = ForkJoinPool.getCommonPoolParallelism() + 1;
+        long chunkBytes = Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, getBudget() / (2L * parallelism)));
+        List<ChunkSummary> summaries = new ArrayList<>();
+        Metrics.CsvLoad load = new Metrics.CsvLoad();
+        String[] header;
+        try {
+            header = MappedCsvParser.parseInChunks(csvFile, chunkBytes, (chunk, columns, classIds, labels) -> {
+                ChunkSummary summary = writeChunk(chunkFile(partial, chunk), columns, classIds, labels);
+                synchronized (summaries) {
+                    while (summaries.size() <= chunk) {
+                        summaries.add(null);
+                    }
+                    summaries.set(chunk, summary);
+                }
+            });
+        } catch (IOException | RuntimeException e) {
+            deleteStore(partial);
+            throw e;
+        }
+
+        // class ids are global in order of first appearance, chunks are visited in file order
+        List<String> classNames = new ArrayList<>();
+        HashMap<String, Integer> classLookup = new HashMap<>();
+        for (ChunkSummary summary : summaries) {
+            summary.globalIds = new int[summary.labels.size()];
+            for (int label = 0; label < summary.globalIds.length; label++) {
+                summary.globalIds[label] = classLookup.computeIfAbsent(summary.labels.get(label), name -> {
+                    classNames.add(name);
+                    return classNames.size() - 1;
+                });
+            }
+        }
+        writeSummary(new File(partial, SUMMARY), csvSize, csvModified, header, classNames, summaries);
+        deleteStore(directory);
+        Files.move(partial.toPath(), directory.toPath(), StandardCopyOption.ATOMIC_MOVE);
+
+        ChunkStore store = open(csvFile);
+        if (store == null) {
+            throw new IOException("Chunks of " + csvFile.getName() + " could not be read back, was the file changed while converting?");
+        }
+        load.finish(csvFile.getPath(), "chunks", csvSize, store.getRowCount());
+        return store;
+    }
+
+    private static File chunkFile(File directory, int chunk) {
+        return new File(directory, String.format("chunk-%06d.bin", chunk));
+    }
+
+    // Class ids, as narrow as the chunk's labels allow, then every column; ranges are taken on the way
+    private static ChunkSummary writeChunk(File file, float[][] columns, int[] classIds, List<String> labels) throws IOException {
+        ChunkSummary summary = new ChunkSummary(classIds.length, labels, columns.length);
+        summary.classIdBytes = labels.size() <= 1 << 8 ? 1 : labels.size() <= 1 << 16 ? 2 : 4;
+        for (int classId : classIds) {
+            summary.labelRows[classId]++;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(classIds.length * summary.classIdBytes).order(ByteOrder.LITTLE_ENDIAN);
+            for (int classId : classIds) {
+                if (summary.classIdBytes == 1) {
+                    buffer.put((byte) classId);
+                } else if (summary.classIdBytes == 2) {
+                    buffer.putShort((short) classId);
+                } else {
+                    buffer.putInt(classId);
+                }
+            }
+            write(channel, buffer.flip());
+            buffer = ByteBuffer.allocate(4 * classIds.length).order(ByteOrder.LITTLE_ENDIAN);
+            for (int col = 0; col < columns.length; col++) {
+                float min = Float.MAX_VALUE;
+                float max = -Float.MAX_VALUE;
+                // same comparisons as PlotModel's scan, so NaN is skipped alike
+                for (float value : columns[col]) {
+                    if (value < min) {
+                        min = value;
+                    }
+                    if (value > max) {
+                        max = value;
+                    }
+                }
+                summary.mins[col] = min;
+                summary.maxes[col] = max;
+                buffer.clear();
+                buffer.asFloatBuffer().put(columns[col]);
+                write(channel, buffer);
+            }
+        }
+        return summary;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    private static void writeSummary(File file, long csvSize, long csvModified, String[] header, List<String> classNames,
+                                     List<ChunkSummary> summaries) throws IOException {
+        List<byte[]> strings = new ArrayList<>();
+        for (String name : header) {
+            strings.add(name.getBytes(StandardCharsets.UTF_8));
+        }
+        for (String className : classNames) {
+            strings.add(className.getBytes(StandardCharsets.UTF_8));
+        }
+        int attributeCount = header.length - 1;
+        long length = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+        for (byte[] string : strings) {
+            length += 4 + string.length;
+        }
+        for (ChunkSummary summary : summaries) {
+            length += 12 + 8L * summary.labels.size() + 8L * attributeCount;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(length)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(VERSION).putLong(csvSize).putLong(csvModified);
+        buffer.putInt(attributeCount).putInt(classNames.size()).putInt(summaries.size());
+        for (byte[] string : strings) {
+            buffer.putInt(string.length).put(string);
+        }
+        for (ChunkSummary summary : summaries) {
+            buffer.putInt(summary.rows).putInt(summary.classIdBytes).putInt(summary.labels.size());
+            for (int label = 0; label < summary.labels.size(); label++) {
+                buffer.putInt(summary.globalIds[label]).putInt(summary.labelRows[label]);
+            }
+            for (int col = 0; col < attributeCount; col++) {
+                buffer.putFloat(summary.mins[col]).putFloat(summary.maxes[col]);
+            }
+        }
+        Files.write(file.toPath(), buffer.array());
+    }
+
+    // Remove a store directory and the chunk files in it
+    private static void deleteStore(File directory) throws IOException {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            Files.deleteIfExists(file.toPath());
+        }
+        Files.deleteIfExists(directory.toPath());
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public String[] getHeader() {
+        return header.clone();
+    }
+
+    public int getAttributeCount() {
+        return header.length - 1;
+    }
+
+    public List<String> getClassNames() {
+        return classNames;
+    }
+
+    public long getRowCount() {
+        return chunkStarts[chunkRows.length];
+    }
+
+    public int getChunkCount() {
+        return chunkRows.length;
+    }
+
+    public int getChunkRows(int chunk) {
+        return chunkRows[chunk];
+    }
+
+    // {min, max} of an attribute over every row, {0, 0} for a store without rows
+    public float[] getRange(int col) {
+        return ranges[col].clone();
+    }
+
+    // Range of an attribute within one chunk, from the summary
+    public float getChunkMin(int chunk, int col) {
+        return chunkMins[chunk * getAttributeCount() + col];
+    }
+
+    public float getChunkMax(int chunk, int col) {
+        return chunkMaxes[chunk * getAttributeCount() + col];
+    }
+
+    /**
+     * The given attribute columns of a chunk, mapped and copied in bulk. Only those columns are read from disk.
+     */
+    protected float[][] readColumns(int chunk, int[] cols) throws IOException {
+        int rows = chunkRows[chunk];
+        float[][] columns = new float[cols.length][rows];
+        try (FileChannel channel = FileChannel.open(chunkFile(directory, chunk).toPath(), StandardOpenOption.READ)) {
+            long start = (long) rows * classIdBytes[chunk];
+            for (int i = 0; i < cols.length; i++) {
+                if (rows > 0) {
+                    channel.map(FileChannel.MapMode.READ_ONLY, start + 4L * rows * cols[i], 4L * rows)
+                            .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(columns[i]);
+                }
+            }
+        }
+        return columns;
+    }
+
+    // Class ids of a chunk's rows, as indexes into getClassNames
+    protected int[] readClassIds(int chunk) throws IOException {
+        int rows = chunkRows[chunk];
+        int bytes = classIdBytes[chunk];
+        int[] globalIds = globalClassIds[chunk];
+        int[] classIds = new int[rows];
+        if (rows == 0) {
+            return classIds;
+        }
+        try (FileChannel channel = FileChannel.open(chunkFile(directory, chunk).toPath(), StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, (long) rows * bytes).order(ByteOrder.LITTLE_ENDIAN);
+            for (int row = 0; row < rows; row++) {
+                int local = bytes == 1 ? buffer.get(row) & 0xFF : bytes == 2 ? buffer.getShort(2 * row) & 0xFFFF : buffer.getInt(4 * row);
+                classIds[row] = globalIds[local];
+            }
+        }
+        return classIds;
+    }
+
+    /**
+     * An evenly spaced sample of about targetRows rows, as a dataset scaled to the ranges of every row. It stands
+     * in for the file wherever rows have to be in memory: axes, labels, picking and the legend. Chunks are read
+     * one at a time.
+     */
+    protected SampledDataset readOverview(int targetRows) throws IOException {
+        long step = Math.max(1, (getRowCount() + targetRows - 1) / Math.max(1, targetRows));
+        int attributeCount = getAttributeCount();
+        float[] mins = new float[attributeCount];
+        float[] maxes = new float[attributeCount];
+        for (int col = 0; col < attributeCount; col++) {
+            mins[col] = ranges[col][0];
+            maxes[col] = ranges[col][1];
+        }
+        int sampleRows = (int) ((getRowCount() + step - 1) / step);
+        SampledDataset overview = new SampledDataset(header, sampleRows, getRowCount(), classCounts.clone(), mins, maxes);
+        for (String className : classNames) {
+            overview.internClass(className);
+        }
+        int[] allColumns = new int[attributeCount];
+        Arrays.setAll(allColumns, col -> col);
+        float[] values = new float[attributeCount];
+        for (int chunk = 0; chunk < chunkRows.length; chunk++) {
+            // the first row of the chunk that falls on the step
+            long first = (step - chunkStarts[chunk] % step) % step;
+            if (first >= chunkRows[chunk]) {
+                continue;
+            }
+            float[][] columns = readColumns(chunk, allColumns);
+            int[] classIds = readClassIds(chunk);
+            for (long row = first; row < chunkRows[chunk]; row += step) {
+                for (int col = 0; col < attributeCount; col++) {
+                    values[col] = columns[col][(int) row];
+                }
+                overview.addRow(values, classNames.get(classIds[(int) row]));
+            }
+        }
+        return overview;
+    }
+
+    /**
+     * What a chunk contributes to the summary, collected while it is written
+     */
+    private static class ChunkSummary {
+        private final int rows;
+        private final List<String> labels;
+        private final int[] labelRows;
+        private final float[] mins;
+        private final float[] maxes;
+        private int classIdBytes;
+        private int[] globalIds;
+
+        ChunkSummary(int rows, List<String> labels, int attributeCount) {
+            this.rows = rows;
+            this.labels = labels;
+            this.labelRows = new int[labels.size()];
+            this.mins = new float[attributeCount];
+            this.maxes = new float[attributeCount];
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package javaPC;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Least recently used columns of a dataset read on demand, raw values and normalized coordinates alike,
+ * held under one budget in bytes. An evicted column is only dropped from the cache, views still drawing
+ * it keep their reference and a later lookup parses it again.
+ */
+public class ColumnCache {
+
+    protected static final int VALUES = 0;
+    protected static final int NORMALIZED = 1;
+
+    private final long budget;
+    // keyed by column index and kind, in access order
+    private final LinkedHashMap<Long, float[]> columns = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    protected ColumnCache(long budget) {
+        this.budget = budget;
+    }
+
+    public long getBudget() {
+        return budget;
+    }
+
+    protected synchronized float[] get(int col, int kind) {
+        float[] column = columns.get(keyOf(col, kind));
+        Metrics.add(column != null ? Metrics.COLUMN_CACHE_HIT : Metrics.COLUMN_CACHE_MISS, 1);
+        return column;
+    }
+
+    // Add a column and drop the least recently used ones past the budget, never the one just added
+    protected synchronized void put(int col, int kind, float[] column) {
+        float[] previous = columns.put(keyOf(col, kind), column);
+        bytes += sizeOf(column) - (previous == null ? 0 : sizeOf(previous));
+        Iterator<Map.Entry<Long, float[]>> eldest = columns.entrySet().iterator();
+        while (bytes > budget && columns.size() > 1) {
+            float[] evicted = eldest.next().getValue();
+            eldest.remove();
+            bytes -= sizeOf(evicted);
+        }
+    }
+
+    private static long keyOf(int col, int kind) {
+        return (long) col << 1 | kind;
+    }
+
+    private static long sizeOf(float[] column) {
+        return (long) column.length * Float.BYTES;
+    }
+}
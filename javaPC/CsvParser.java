@@ -4,10 +4,27 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 
 import javax.swing.JFileChooser;
 
 public class CsvParser {
+
+    // Files at least this large are memory mapped and parsed on all cores
+    private static final long MAPPED_INGEST_THRESHOLD = 32L << 20;
+    // Files at least this large open as a sample of about this many rows, drawn in seconds
+    private static final long SAMPLE_THRESHOLD = 256L << 20;
+    private static final int DEFAULT_SAMPLE_ROWS = 200_000;
+    // Files at least this large get a binary cache next to them, smaller ones parse about as fast as it reads
+    private static final long CACHE_THRESHOLD = 32L << 20;
+    // a cached file opens whole instead of sampled when its columns fit this share of the heap
+    private static final int CACHED_HEAP_SHARE = 4;
+    // Files at least this large with at least this many attributes only parse the columns on screen
+    private static final long LAZY_THRESHOLD = 32L << 20;
+    private static final int LAZY_MIN_ATTRIBUTES = 64;
+    // share of the heap columns read on demand may take by default
+    private static final int COLUMN_HEAP_SHARE = 4;
+
     protected static File loadCSVFile() {
         // Create a file chooser dialog
         JFileChooser fileChooser = new JFileChooser();
@@ -39,48 +56,161 @@ public class CsvParser {
         return null;
     }
 
-    protected static String[][] parseCSVFile(File csvFile) {
-        try (BufferedReader br = new BufferedReader(new FileReader(csvFile))) {
-            String line;
-            int numRows = getNumRows(csvFile); // Get the number of rows in the CSV file
-            int numCols = getNumCols(csvFile); // Get the number of columns in the CSV file
-            String[][] data = new String[numRows][numCols];
+    // The dataset the window opens a file as: read on demand, sampled or whole. Slow for large files, so callers
+    // run it off the EDT
+    protected static Dataset parseCSVFile(File csvFile) throws IOException {
+        if (usesLazyColumns(csvFile)) {
+            return readLazyDataset(csvFile);
+        }
+        int sampleRows = sampleRowsFor(csvFile);
+        return sampleRows > 0 ? readSampledDataset(csvFile, sampleRows) : readDataset(csvFile);
+    }
 
-            // parses CSV into 2D array
-            int row = 0;
-            while ((line = br.readLine()) != null) {
-                String[] values = line.split(",");
-                for (int col = 0; col < values.length; col++) {
-                    data[row][col] = values[col];
+    protected static Dataset readDataset(File csvFile) throws IOException {
+        boolean cached = usesCache(csvFile);
+        if (cached) {
+            try {
+                Metrics.CsvLoad load = new Metrics.CsvLoad();
+                Dataset dataset = DatasetCache.read(csvFile);
+                if (dataset != null) {
+                    Metrics.add(Metrics.DATASET_CACHE_HIT, 1);
+                    load.finish(csvFile.getPath(), "cache", DatasetCache.cacheFileFor(csvFile).length(), dataset.getRowCount());
+                    return dataset;
                 }
-                row++;
+            } catch (IOException e) {
+                System.err.println("Ignoring unreadable cache of " + csvFile.getName() + ": " + e.getMessage());
+            }
+            Metrics.add(Metrics.DATASET_CACHE_MISS, 1);
+        }
+        // taken before parsing, a file changed while it is read gets a cache that never matches
+        long csvSize = csvFile.length();
+        long csvModified = csvFile.lastModified();
+        Metrics.CsvLoad load = new Metrics.CsvLoad();
+        Dataset dataset = parseDataset(csvFile);
+        load.finish(csvFile.getPath(), "parse", csvSize, dataset.getRowCount());
+        if (cached) {
+            try {
+                DatasetCache.write(csvFile, csvSize, csvModified, dataset);
+            } catch (IOException e) {
+                // the cache only saves time, the file is still read without it
+                System.err.println("Could not write cache of " + csvFile.getName() + ": " + e.getMessage());
             }
-            
-            return data;
+        }
+        return dataset;
+    }
 
-        } catch (IOException e) {
-            e.printStackTrace();
+    private static Dataset parseDataset(File csvFile) throws IOException {
+        // -DjavaPC.ingest=mapped|buffered overrides the choice made from the file size
+        String mode = System.getProperty("javaPC.ingest", "auto");
+        boolean mapped = mode.equals("mapped")
+                || (mode.equals("auto") && csvFile.length() >= MAPPED_INGEST_THRESHOLD && Runtime.getRuntime().availableProcessors() > 1);
+        if (mapped) {
+            return MappedCsvParser.readDataset(csvFile);
         }
-        return null;
+        return readBufferedDataset(csvFile);
     }
 
-    // Helper method to get the number of rows in the CSV file
-    protected static int getNumRows(File csvFile) throws IOException {
-        try (BufferedReader br = new BufferedReader(new FileReader(csvFile))) {
-            int numRows = 0;
-            while (br.readLine() != null) {
-                numRows++;
-            }
-            return numRows;
+    // Rows to sample from a file too large to open whole at first, 0 to read every row.
+    // -DjavaPC.sampleRows sets the sample size, 0 turns sampling off
+    protected static int sampleRowsFor(File csvFile) {
+        int sampleRows = Integer.getInteger("javaPC.sampleRows", DEFAULT_SAMPLE_ROWS);
+        if (csvFile.length() < SAMPLE_THRESHOLD || sampleRows <= 0) {
+            return 0;
+        }
+        // mapping a cache back takes about as long as sampling the text
+        if (usesCache(csvFile) && DatasetCache.isValid(csvFile)
+                && DatasetCache.cacheFileFor(csvFile).length() <= Runtime.getRuntime().maxMemory() / CACHED_HEAP_SHARE) {
+            return 0;
         }
+        return sampleRows;
     }
 
-    // Helper method to get the number of columns in the CSV file
-    protected static int getNumCols(File csvFile) throws IOException {
-        try (BufferedReader br = new BufferedReader(new FileReader(csvFile))) {
+    // -DjavaPC.lazyColumns=on|off overrides the choice made from the file size and header width
+    protected static boolean usesLazyColumns(File csvFile) throws IOException {
+        String mode = System.getProperty("javaPC.lazyColumns", "auto");
+        if (!mode.equals("auto")) {
+            return mode.equals("on");
+        }
+        if (csvFile.length() < LAZY_THRESHOLD) {
+            return false;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(csvFile, StandardCharsets.UTF_8))) {
+            String header = reader.readLine();
+            return header != null && parseHeader(header).length - 1 >= LAZY_MIN_ATTRIBUTES;
+        }
+    }
+
+    /**
+     * Index the file and parse attribute columns only when they are read. -DjavaPC.columnBudgetMB sets how much
+     * of the heap parsed columns may take, a quarter of it by default.
+     */
+    protected static LazyDataset readLazyDataset(File csvFile) throws IOException {
+        long budgetMB = Long.getLong("javaPC.columnBudgetMB", 0);
+        long budget = budgetMB > 0 ? budgetMB << 20 : Runtime.getRuntime().maxMemory() / COLUMN_HEAP_SHARE;
+        Metrics.CsvLoad load = new Metrics.CsvLoad();
+        LazyDataset dataset = MappedCsvParser.indexDataset(csvFile, new ColumnCache(budget));
+        load.finish(csvFile.getPath(), "index", csvFile.length(), dataset.getRowCount());
+        return dataset;
+    }
+
+    // -DjavaPC.cache=off neither reads nor writes caches
+    private static boolean usesCache(File csvFile) {
+        return !System.getProperty("javaPC.cache", "on").equals("off") && csvFile.length() >= CACHE_THRESHOLD;
+    }
+
+    // Every row is still read for the full counts and ranges, but only about targetRows of them are kept
+    protected static SampledDataset readSampledDataset(File csvFile, int targetRows) throws IOException {
+        Metrics.CsvLoad load = new Metrics.CsvLoad();
+        SampledDataset dataset = MappedCsvParser.readSampledDataset(csvFile, targetRows);
+        load.finish(csvFile.getPath(), "sample", csvFile.length(), dataset.getFullRowCount());
+        return dataset;
+    }
+
+    // Reads the CSV in a single pass straight into the columnar dataset
+    protected static Dataset readBufferedDataset(File csvFile) throws IOException {
+        try (BufferedReader br = new BufferedReader(new FileReader(csvFile, StandardCharsets.UTF_8))) {
             String line = br.readLine();
-            String[] values = line.split(",");
-            return values.length;
+            if (line == null) {
+                throw new IOException("Empty CSV file: " + csvFile.getName());
+            }
+            String[] header = parseHeader(line);
+            Dataset dataset = new Dataset(header);
+
+            float[] values = new float[header.length - 1];
+            int row = 1;
+            while ((line = br.readLine()) != null) {
+                row++;
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String className = parseRow(line, values, row);
+                dataset.addRow(values, className);
+            }
+            dataset.trimToSize();
+            return dataset;
+        }
+    }
+
+    protected static String[] parseHeader(String line) {
+        // drop a UTF-8 byte order mark left on the header
+        if (line.startsWith("\uFEFF")) {
+            line = line.substring(1);
+        }
+        return line.split(",");
+    }
+
+    // Parse one data line into values, returning its class label, the last cell
+    protected static String parseRow(String line, float[] values, int row) {
+        // split by hand, avoiding a String per numeric cell
+        int start = 0;
+        for (int col = 0; col < values.length; col++) {
+            int end = line.indexOf(',', start);
+            if (end < 0) {
+                throw new NumberFormatException("Row " + row + " has fewer than " + (values.length + 1) + " values");
+            }
+            values[col] = Float.parseFloat(line.substring(start, end));
+            start = end + 1;
         }
+        return line.substring(start);
     }
 }
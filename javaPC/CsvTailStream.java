@@ -0,0 +1,67 @@
+package javaPC;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Follows a CSV file as it grows, like tail -f, starting with the rows already in it
+ */
+public class CsvTailStream extends RowStream {
+
+    // how long to wait before looking for new bytes once the end of the file is reached
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final File file;
+
+    protected CsvTailStream(File file) {
+        super(file.getName());
+        this.file = file;
+    }
+
+    @Override
+    protected void readLines() throws IOException {
+        byte[] buffer = new byte[1 << 16];
+        // bytes of a line whose newline has not been written yet
+        ByteArrayOutputStream partial = new ByteArrayOutputStream();
+        long position = 0;
+        while (!isClosed()) {
+            try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+                long length = input.length();
+                if (length < position) {
+                    // truncated or replaced, read the new file from its header
+                    position = 0;
+                    partial.reset();
+                    restart();
+                }
+                input.seek(position);
+                int read;
+                while ((read = input.read(buffer)) > 0) {
+                    position += read;
+                    int start = 0;
+                    for (int i = 0; i < read; i++) {
+                        if (buffer[i] == '\n') {
+                            partial.write(buffer, start, i - start);
+                            acceptLine(toLine(partial));
+                            partial.reset();
+                            start = i + 1;
+                        }
+                    }
+                    partial.write(buffer, start, read - start);
+                }
+            }
+            try {
+                Thread.sleep(POLL_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private static String toLine(ByteArrayOutputStream bytes) {
+        String line = bytes.toString(StandardCharsets.UTF_8);
+        return line.endsWith("\r") ? line.substring(0, line.length() - 1) : line;
+    }
+}
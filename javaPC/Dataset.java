@@ -0,0 +1,183 @@
+package javaPC;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+
+/**
+ * Columnar dataset, one float array per attribute and a dictionary encoded class column
+ */
+public class Dataset {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final String[] attributeNames;
+    private final String classColumnName;
+
+    private float[][] columns;
+    private int[] classIds;
+    private int rowCount;
+
+    // class label dictionary, ids are assigned in order of first appearance
+    private final ArrayList<String> classNames = new ArrayList<>();
+    private final HashMap<String, Integer> classLookup = new HashMap<>();
+
+    // rows per class id, kept up to date as rows are added, null until counted for buffers a loader filled
+    private int[] classCounts = new int[0];
+
+    // {min, max} per attribute recorded by a loader, dropped once rows are added
+    private float[][] knownRanges;
+
+    protected Dataset(String[] header) {
+        this(header, INITIAL_CAPACITY);
+    }
+
+    protected Dataset(String[] header, int capacity) {
+        // the last header cell names the class column, everything before it is an attribute
+        this.attributeNames = Arrays.copyOf(header, header.length - 1);
+        this.classColumnName = header[header.length - 1];
+
+        capacity = Math.max(capacity, 1);
+        columns = new float[attributeNames.length][capacity];
+        classIds = new int[capacity];
+    }
+
+    protected void addRow(float[] values, String className) {
+        ensureCapacity(rowCount + 1);
+        for (int col = 0; col < values.length; col++) {
+            columns[col][rowCount] = values[col];
+        }
+        int classId = internClass(className);
+        classIds[rowCount] = classId;
+        if (classCounts != null) {
+            if (classId >= classCounts.length) {
+                classCounts = Arrays.copyOf(classCounts, classNames.size());
+            }
+            classCounts[classId]++;
+        }
+        rowCount++;
+        knownRanges = null;
+    }
+
+    protected int internClass(String className) {
+        Integer id = classLookup.get(className);
+        if (id == null) {
+            id = classNames.size();
+            classNames.add(className);
+            classLookup.put(className, id);
+        }
+        return id;
+    }
+
+    // Adopt column buffers filled in place by a loader; class ids must already be interned here
+    protected void setColumns(float[][] columns, int[] classIds, int rowCount) {
+        this.columns = columns;
+        this.classIds = classIds;
+        this.rowCount = rowCount;
+        classCounts = null;
+    }
+
+    // For subclasses that fill or drop rows in the buffers themselves
+    protected void setRowCount(int rowCount) {
+        this.rowCount = rowCount;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= classIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, classIds.length + (classIds.length >> 1));
+        for (int col = 0; col < columns.length; col++) {
+            columns[col] = Arrays.copyOf(columns[col], newCapacity);
+        }
+        classIds = Arrays.copyOf(classIds, newCapacity);
+    }
+
+    // Release the unused tail of the growable buffers once loading is complete
+    protected void trimToSize() {
+        if (rowCount == classIds.length) {
+            return;
+        }
+        for (int col = 0; col < columns.length; col++) {
+            columns[col] = Arrays.copyOf(columns[col], rowCount);
+        }
+        classIds = Arrays.copyOf(classIds, rowCount);
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getAttributeCount() {
+        return attributeNames.length;
+    }
+
+    public String getAttributeName(int col) {
+        return attributeNames[col];
+    }
+
+    public String getClassColumnName() {
+        return classColumnName;
+    }
+
+    public float[] getColumn(int col) {
+        return columns[col];
+    }
+
+    // Several columns at once, a dataset reading columns on demand parses the missing ones together
+    protected float[][] getColumns(int[] cols) {
+        float[][] selected = new float[cols.length][];
+        for (int i = 0; i < cols.length; i++) {
+            selected[i] = getColumn(cols[i]);
+        }
+        return selected;
+    }
+
+    public float getValue(int row, int col) {
+        return columns[col][row];
+    }
+
+    public int getClassId(int row) {
+        return classIds[row];
+    }
+
+    public int[] getClassIds() {
+        return classIds;
+    }
+
+    public String getClassName(int classId) {
+        return classNames.get(classId);
+    }
+
+    public int getClassCount() {
+        return classNames.size();
+    }
+
+    public List<String> getClassNames() {
+        return Collections.unmodifiableList(classNames);
+    }
+
+    // Ranges a loader already knows, so they need no scan, one {min, max} per attribute
+    protected void setKnownRanges(float[][] ranges) {
+        knownRanges = ranges;
+    }
+
+    // Exact {min, max} of an attribute when it is known or kept without a scan, null otherwise
+    protected float[] getTrackedRange(int col) {
+        return knownRanges != null ? knownRanges[col].clone() : null;
+    }
+
+    // Number of rows per class id, counted once for a loaded dataset and then followed as rows are added
+    public int[] countClasses() {
+        if (classCounts == null) {
+            int[] counts = new int[classNames.size()];
+            for (int row = 0; row < rowCount; row++) {
+                counts[classIds[row]]++;
+            }
+            classCounts = counts;
+        }
+        return Arrays.copyOf(classCounts, classNames.size());
+    }
+}
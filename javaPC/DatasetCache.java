@@ -0,0 +1,326 @@
+package javaPC;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Binary sidecar of a parsed CSV, written next to it as NAME.csv.pcvcache so the file reopens by mapping its
+ * columns instead of parsing text. It holds the header, the class dictionary with one, two or four byte ids
+ * per row, every attribute's min/max and the float columns, and is only used while the CSV still has the size
+ * and modification time it was written for.
+ */
+public class DatasetCache {
+
+    private static final int MAGIC = 0x50435643;  // "PCVC"
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".pcvcache";
+    // magic, version and the metadata length come before the metadata
+    private static final int PREFIX_BYTES = 12;
+    // values per mapping, far below the 2 GB limit of a single MappedByteBuffer
+    private static final int MAP_VALUES = 1 << 28;
+    private static final int WRITE_BUFFER = 1 << 20;
+
+    protected static File cacheFileFor(File csvFile) {
+        return new File(csvFile.getPath() + SUFFIX);
+    }
+
+    // Whether the csv has a cache written for its current size and modification time
+    protected static boolean isValid(File csvFile) {
+        try (FileChannel channel = FileChannel.open(cacheFileFor(csvFile).toPath(), StandardOpenOption.READ)) {
+            return readMetadata(channel, csvFile) != null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * The csv's rows read back from its cache, null when it has none or the cache no longer matches the file.
+     * Class ids and columns are copied out of memory mappings in bulk, one attribute per task.
+     */
+    protected static Dataset read(File csvFile) throws IOException {
+        File cacheFile = cacheFileFor(csvFile);
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            Metadata metadata = readMetadata(channel, csvFile);
+            if (metadata == null) {
+                return null;
+            }
+            int rowCount = metadata.rowCount;
+            int[] classIds = new int[rowCount];
+            float[][] columns = new float[metadata.header.length - 1][rowCount];
+
+            List<RecursiveAction> tasks = new ArrayList<>(columns.length + 1);
+            tasks.add(task(() -> readClassIds(channel, metadata.classIdsStart(), metadata.classIdBytes, classIds)));
+            for (int col = 0; col < columns.length; col++) {
+                long position = metadata.columnStart(col);
+                float[] column = columns[col];
+                tasks.add(task(() -> readFloats(channel, position, column)));
+            }
+            try {
+                ForkJoinTask.invokeAll(tasks);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            Dataset dataset = new Dataset(metadata.header, 1);
+            for (String className : metadata.classNames) {
+                dataset.internClass(className);
+            }
+            dataset.setColumns(columns, classIds, rowCount);
+            dataset.setKnownRanges(metadata.ranges);
+            return dataset;
+        }
+    }
+
+    /**
+     * Write the dataset's cache next to the csv. csvSize and csvModified are the csv's as of before it was
+     * parsed, so a file changed meanwhile gets a cache that is never used. The cache is written to a
+     * temporary file first and moved into place, a reader never sees half of one.
+     */
+    protected static void write(File csvFile, long csvSize, long csvModified, Dataset data) throws IOException {
+        int rowCount = data.getRowCount();
+        int attributeCount = data.getAttributeCount();
+        int classIdBytes = data.getClassCount() <= 1 << 8 ? 1 : data.getClassCount() <= 1 << 16 ? 2 : 4;
+
+        List<byte[]> strings = new ArrayList<>();
+        for (int col = 0; col < attributeCount; col++) {
+            strings.add(data.getAttributeName(col).getBytes(StandardCharsets.UTF_8));
+        }
+        strings.add(data.getClassColumnName().getBytes(StandardCharsets.UTF_8));
+        for (String className : data.getClassNames()) {
+            strings.add(className.getBytes(StandardCharsets.UTF_8));
+        }
+        int metadataLength = 8 + 8 + 4 * 4 + 8 * attributeCount;
+        for (byte[] string : strings) {
+            metadataLength += 4 + string.length;
+        }
+
+        File cacheFile = cacheFileFor(csvFile);
+        File partial = new File(cacheFile.getPath() + ".tmp");
+        try (FileChannel channel = FileChannel.open(partial.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER).order(ByteOrder.LITTLE_ENDIAN);
+            channel.position(PREFIX_BYTES + metadataLength);
+            int[] classIds = data.getClassIds();
+            for (int row = 0; row < rowCount; row++) {
+                if (buffer.remaining() < classIdBytes) {
+                    flush(channel, buffer);
+                }
+                if (classIdBytes == 1) {
+                    buffer.put((byte) classIds[row]);
+                } else if (classIdBytes == 2) {
+                    buffer.putShort((short) classIds[row]);
+                } else {
+                    buffer.putInt(classIds[row]);
+                }
+            }
+            flush(channel, buffer);
+
+            // the ranges are found while the columns are written, one pass over each
+            float[][] ranges = new float[attributeCount][];
+            for (int col = 0; col < attributeCount; col++) {
+                float[] values = data.getColumn(col);
+                float min = rowCount > 0 ? Float.MAX_VALUE : 0;
+                float max = rowCount > 0 ? -Float.MAX_VALUE : 0;
+                for (int from = 0; from < rowCount; from += WRITE_BUFFER / 4) {
+                    int count = Math.min(WRITE_BUFFER / 4, rowCount - from);
+                    // same comparisons as PlotModel's scan, so NaN is skipped alike
+                    for (int row = from; row < from + count; row++) {
+                        if (values[row] < min) {
+                            min = values[row];
+                        }
+                        if (values[row] > max) {
+                            max = values[row];
+                        }
+                    }
+                    buffer.asFloatBuffer().put(values, from, count);
+                    buffer.position(4 * count);
+                    flush(channel, buffer);
+                }
+                ranges[col] = new float[] {min, max};
+            }
+
+            // the header goes in last, its ranges are known now
+            buffer = ByteBuffer.allocate(PREFIX_BYTES + metadataLength).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(metadataLength);
+            buffer.putLong(csvSize).putLong(csvModified);
+            buffer.putInt(rowCount).putInt(attributeCount).putInt(data.getClassCount()).putInt(classIdBytes);
+            for (byte[] string : strings) {
+                buffer.putInt(string.length).put(string);
+            }
+            for (float[] range : ranges) {
+                buffer.putFloat(range[0]).putFloat(range[1]);
+            }
+            buffer.flip();
+            long position = 0;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(partial.toPath());
+            throw e;
+        }
+        Files.move(partial.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Header of the cache, null when it is not a cache of this version or does not match the csv
+    private static Metadata readMetadata(FileChannel channel, File csvFile) throws IOException {
+        ByteBuffer prefix = readFully(channel, 0, PREFIX_BYTES);
+        if (prefix == null || prefix.getInt() != MAGIC || prefix.getInt() != VERSION) {
+            return null;
+        }
+        int metadataLength = prefix.getInt();
+        ByteBuffer buffer = metadataLength > 0 ? readFully(channel, PREFIX_BYTES, metadataLength) : null;
+        if (buffer == null || buffer.getLong() != csvFile.length() || buffer.getLong() != csvFile.lastModified()) {
+            return null;
+        }
+        int rowCount = buffer.getInt();
+        int attributeCount = buffer.getInt();
+        int classCount = buffer.getInt();
+        int classIdBytes = buffer.getInt();
+        // every name and range takes at least 4 bytes of the metadata, which also bounds the arrays below
+        if (rowCount < 0 || attributeCount < 0 || classCount < 0 || attributeCount + classCount > metadataLength / 4
+                || (classIdBytes != 1 && classIdBytes != 2 && classIdBytes != 4)) {
+            return null;
+        }
+        Metadata metadata = new Metadata(metadataLength, rowCount, attributeCount, classCount, classIdBytes);
+        try {
+            for (int i = 0; i < metadata.header.length; i++) {
+                metadata.header[i] = readString(buffer);
+            }
+            for (int i = 0; i < metadata.classNames.length; i++) {
+                metadata.classNames[i] = readString(buffer);
+            }
+            for (int col = 0; col < metadata.ranges.length; col++) {
+                metadata.ranges[col] = new float[] {buffer.getFloat(), buffer.getFloat()};
+            }
+        } catch (BufferUnderflowException e) {
+            return null;
+        }
+        // a cache cut short by a full disk is not used either
+        return channel.size() == metadata.columnStart(attributeCount) ? metadata : null;
+    }
+
+    // length bytes at position, null when the file ends before them
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        if (position + length > channel.size()) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        return buffer.flip();
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void readClassIds(FileChannel channel, long position, int classIdBytes, int[] classIds) throws IOException {
+        for (int from = 0; from < classIds.length; from += MAP_VALUES / classIdBytes) {
+            int count = Math.min(MAP_VALUES / classIdBytes, classIds.length - from);
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position + (long) from * classIdBytes,
+                    (long) count * classIdBytes).order(ByteOrder.LITTLE_ENDIAN);
+            if (classIdBytes == 4) {
+                buffer.asIntBuffer().get(classIds, from, count);
+            } else if (classIdBytes == 2) {
+                for (int i = 0; i < count; i++) {
+                    classIds[from + i] = buffer.getShort(2 * i) & 0xFFFF;
+                }
+            } else {
+                for (int i = 0; i < count; i++) {
+                    classIds[from + i] = buffer.get(i) & 0xFF;
+                }
+            }
+        }
+    }
+
+    private static void readFloats(FileChannel channel, long position, float[] values) throws IOException {
+        for (int from = 0; from < values.length; from += MAP_VALUES / 4) {
+            int count = Math.min(MAP_VALUES / 4, values.length - from);
+            FloatBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position + 4L * from, 4L * count)
+                    .order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer();
+            buffer.get(values, from, count);
+        }
+    }
+
+    private static RecursiveAction task(IoStep step) {
+        return new RecursiveAction() {
+            @Override
+            protected void compute() {
+                try {
+                    step.run();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    @FunctionalInterface
+    private interface IoStep {
+        void run() throws IOException;
+    }
+
+    /**
+     * The cache's header and where its sections start
+     */
+    private static class Metadata {
+        final int metadataLength;
+        final int rowCount;
+        final int classIdBytes;
+        final String[] header;
+        final String[] classNames;
+        final float[][] ranges;
+
+        Metadata(int metadataLength, int rowCount, int attributeCount, int classCount, int classIdBytes) {
+            this.metadataLength = metadataLength;
+            this.rowCount = rowCount;
+            this.classIdBytes = classIdBytes;
+            header = new String[attributeCount + 1];
+            classNames = new String[classCount];
+            ranges = new float[attributeCount][];
+        }
+
+        long classIdsStart() {
+            return PREFIX_BYTES + metadataLength;
+        }
+
+        long columnStart(int col) {
+            return classIdsStart() + (long) rowCount * classIdBytes + 4L * rowCount * col;
+        }
+    }
+}
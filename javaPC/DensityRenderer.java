@@ -0,0 +1,112 @@
+package javaPC;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * Accumulation buffer renderer, counts segment hits per pixel and maps them through a transfer function.
+ * Its buffers are sized by the canvas, never by the number of rows.
+ */
+public class DensityRenderer {
+
+    // columns on either side of an axis left out when finding the peak density
+    private static final int AXIS_CLEARANCE = 4;
+
+    // a single hit stays faintly visible next to the densest pixels
+    private static final double MIN_INTENSITY = 0.1;
+
+    private final PlotGeometry geometry;
+
+    // per pixel hit counts and the summed RGB of the classes that hit it
+    private final int[] hits;
+    private final long[] redSums;
+    private final long[] greenSums;
+    private final long[] blueSums;
+
+    protected DensityRenderer(PlotGeometry geometry) {
+        this.geometry = geometry;
+        int size = geometry.getWidth() * geometry.getHeight();
+        hits = new int[size];
+        redSums = new long[size];
+        greenSums = new long[size];
+        blueSums = new long[size];
+    }
+
+    // Add rows[from, to) of the view, strips accumulate their own columns in parallel
+    // a null rows array means rows from to to in order
+    protected void accumulate(AxisView view, int[] rows, int from, int to, int[] classIds, int[] classColors) {
+        ParallelRasterizer.forEachStrip(geometry, strip -> {
+            AccumulateStrip target = new AccumulateStrip(geometry, view, strip);
+            for (int i = from; i < to; i++) {
+                int row = rows == null ? i : rows[i];
+                target.drawRow(row, classColors[classIds[row]], 0, null);
+            }
+        });
+    }
+
+    /**
+     * Write the accumulated density into a TYPE_INT_ARGB_PRE layer. Each pixel takes the hit weighted mean
+     * of its class colors, and its opacity is the transfer function of the hit count scaled by opacity.
+     */
+    protected void resolve(BufferedImage layer, boolean logarithmic, float opacity) {
+        int[] pixels = ((DataBufferInt) layer.getRaster().getDataBuffer()).getData();
+
+        // every row converges on the axes, so the peak is taken between them to keep the gaps readable
+        int maxHits = 0;
+        for (int strip = 0; strip < ParallelRasterizer.getStripCount(geometry); strip++) {
+            int left = geometry.getAxisX(strip) + AXIS_CLEARANCE;
+            int right = strip + 1 < geometry.getAxisCount() ? geometry.getAxisX(strip + 1) - AXIS_CLEARANCE : left;
+            for (int y = 0; y < geometry.getHeight(); y++) {
+                int rowStart = y * geometry.getWidth();
+                for (int index = rowStart + left; index < rowStart + right; index++) {
+                    maxHits = Math.max(maxHits, hits[index]);
+                }
+            }
+        }
+        if (maxHits == 0) {
+            maxHits = 1;
+        }
+        double scale = logarithmic ? 1.0 / Math.log1p(maxHits) : 1.0 / maxHits;
+
+        ParallelRasterizer.forEachStrip(geometry, strip -> {
+            int left = ParallelRasterizer.getStripLeft(geometry, strip);
+            int right = ParallelRasterizer.getStripRight(geometry, strip);
+            for (int y = 0; y < geometry.getHeight(); y++) {
+                int rowStart = y * geometry.getWidth();
+                for (int index = rowStart + left; index < rowStart + right; index++) {
+                    int count = hits[index];
+                    if (count == 0) {
+                        pixels[index] = 0;
+                        continue;
+                    }
+                    double intensity = logarithmic ? Math.log1p(count) * scale : count * scale;
+                    intensity = MIN_INTENSITY + (1 - MIN_INTENSITY) * Math.min(1.0, intensity);
+                    int alpha = (int) Math.round(255 * intensity * opacity);
+                    // premultiply the mean color by the resulting alpha
+                    int r = (int) (redSums[index] * alpha / (255L * count));
+                    int g = (int) (greenSums[index] * alpha / (255L * count));
+                    int b = (int) (blueSums[index] * alpha / (255L * count));
+                    pixels[index] = (alpha << 24) | (r << 16) | (g << 8) | b;
+                }
+            }
+        });
+    }
+
+    /**
+     * Strip that counts hits instead of blending
+     */
+    private class AccumulateStrip extends ParallelRasterizer.Strip {
+
+        AccumulateStrip(PlotGeometry geometry, AxisView view, int strip) {
+            super(geometry, view, strip);
+        }
+
+        @Override
+        protected void plot(int index, int argb) {
+            hits[index]++;
+            redSums[index] += (argb >> 16) & 0xFF;
+            greenSums[index] += (argb >> 8) & 0xFF;
+            blueSums[index] += argb & 0xFF;
+        }
+    }
+}
@@ -4,7 +4,12 @@ package javaPC;
 
 public class Driver {
     public static void main(String[] args) {
-    
+        // arguments select the headless batch renderer instead of the window
+        if (args.length > 0) {
+            BatchRenderer.main(args);
+            return;
+        }
+
         // Spawn window in center of active monitor
         TopWindow appWindow = new TopWindow();
         appWindow.setLocationRelativeTo(null);
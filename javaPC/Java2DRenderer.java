@@ -0,0 +1,176 @@
+package javaPC;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.geom.Path2D;
+import java.util.Arrays;
+
+/**
+ * Java2D drawing of polylines in batches: rows are grouped by class a few hundred at a time, and an opaque
+ * class draws all of a group's segments as one path and fills all of its vertices as another, instead of a
+ * call per segment and vertex. Its vertices repeat the same few pixel rows of each axis, only the first of each is added to
+ * the path, which keeps the fill from slowing down under thousands of overlapping curves. A translucent
+ * class has to draw each row on its own so overlapping rows still add up, it takes one polyline and one
+ * vertex path per row.
+ */
+public class Java2DRenderer {
+
+    // rows grouped by class at a time; classes still interleave in row order from one group to the next,
+    // so no class ends up covering the others
+    private static final int GROUP_ROWS = 512;
+    // control point distance of the cubic curves approximating a circle, per unit of radius
+    private static final float CIRCLE_CONTROL = 0.5522848f;
+
+    private Java2DRenderer() {
+    }
+
+    /**
+     * Draw rows[from, to) from slot firstSlot to lastSlot, a null rows array means rows from to to in order.
+     * vertexScale, when given, sizes vertices on single attribute slots.
+     */
+    protected static void draw(Graphics2D g, PlotGeometry geometry, AxisView view, int[] classIds, Color[] colors, int vertexSize,
+                               AxisHistogram vertexScale, int[] rows, int from, int to, int firstSlot, int lastSlot) {
+        if (to <= from || lastSlot < firstSlot) {
+            return;
+        }
+        Batch batch = new Batch(geometry, view, vertexSize, vertexScale, firstSlot, lastSlot);
+        int[] starts = new int[colors.length + 1];
+        int[] grouped = new int[Math.min(GROUP_ROWS, to - from)];
+        for (int chunk = from; chunk < to; chunk += GROUP_ROWS) {
+            int end = Math.min(to, chunk + GROUP_ROWS);
+            // rows grouped by class with a counting sort, which keeps their order within each class
+            Arrays.fill(starts, 0);
+            for (int i = chunk; i < end; i++) {
+                starts[classIds[rows == null ? i : rows[i]] + 1]++;
+            }
+            for (int classId = 0; classId < colors.length; classId++) {
+                starts[classId + 1] += starts[classId];
+            }
+            int[] next = starts.clone();
+            for (int i = chunk; i < end; i++) {
+                int row = rows == null ? i : rows[i];
+                grouped[next[classIds[row]]++] = row;
+            }
+
+            for (int classId = 0; classId < colors.length; classId++) {
+                if (starts[classId] == starts[classId + 1]) {
+                    continue;
+                }
+                g.setColor(colors[classId]);
+                if (colors[classId].getAlpha() == 255) {
+                    batch.drawTogether(g, grouped, starts[classId], starts[classId + 1]);
+                } else {
+                    batch.drawApart(g, grouped, starts[classId], starts[classId + 1]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Coordinates of the slots being drawn and the paths they are collected in, reused across classes
+     */
+    private static class Batch {
+        private final PlotGeometry geometry;
+        private final AxisView view;
+        private final int vertexSize;
+        private final AxisHistogram vertexScale;
+        private final int firstSlot;
+        private final int slotCount;
+        private final int[] xs;
+        private final int[] ys;
+        private final float[][] slotValues;
+        private final Path2D.Float lines;
+        private final Path2D.Float vertices;
+        // per slot and pixel row, the pass and vertex size last added there; a pass is one opaque path
+        private final int height;
+        private final int[] stamps;
+        private int pass;
+
+        Batch(PlotGeometry geometry, AxisView view, int vertexSize, AxisHistogram vertexScale, int firstSlot, int lastSlot) {
+            this.geometry = geometry;
+            this.view = view;
+            this.vertexSize = vertexSize;
+            this.vertexScale = vertexScale;
+            this.firstSlot = firstSlot;
+            this.slotCount = lastSlot - firstSlot + 1;
+            xs = new int[slotCount];
+            ys = new int[slotCount];
+            slotValues = new float[slotCount][];
+            for (int i = 0; i < slotCount; i++) {
+                xs[i] = geometry.getAxisX(firstSlot + i);
+                slotValues[i] = view.getSlotValues(firstSlot + i);
+            }
+            lines = new Path2D.Float();
+            vertices = new Path2D.Float();
+            height = geometry.getHeight();
+            stamps = new int[slotCount * height];
+        }
+
+        // One path of every segment and one of every vertex, opaque colors look the same drawn once
+        void drawTogether(Graphics2D g, int[] grouped, int from, int to) {
+            lines.reset();
+            vertices.reset();
+            pass++;
+            for (int i = from; i < to; i++) {
+                locate(grouped[i]);
+                lines.moveTo(xs[0], ys[0]);
+                for (int slot = 1; slot < slotCount; slot++) {
+                    lines.lineTo(xs[slot], ys[slot]);
+                }
+                addVertices(grouped[i], true);
+            }
+            g.fill(vertices);
+            if (slotCount > 1) {
+                g.draw(lines);
+            }
+        }
+
+        // A polyline and a vertex path per row, the vertices of one row never overlap each other
+        void drawApart(Graphics2D g, int[] grouped, int from, int to) {
+            for (int i = from; i < to; i++) {
+                locate(grouped[i]);
+                vertices.reset();
+                addVertices(grouped[i], false);
+                g.fill(vertices);
+                if (slotCount > 1) {
+                    g.drawPolyline(xs, ys, slotCount);
+                }
+            }
+        }
+
+        private void locate(int row) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                ys[slot] = geometry.toY(slotValues[slot][row]);
+            }
+        }
+
+        // unique adds each vertex once per pass, an opaque vertex drawn twice in one color changes nothing
+        private void addVertices(int row, boolean unique) {
+            for (int slot = 0; slot < slotCount; slot++) {
+                int size = vertexScale == null || view.isBand(firstSlot + slot) ? vertexSize
+                        : vertexScale.getVertexSize(view.getAttribute(firstSlot + slot), slotValues[slot][row]);
+                int y = ys[slot];
+                if (unique && y >= 0 && y < height) {
+                    int stamp = pass << 8 | size;
+                    if (stamps[slot * height + y] == stamp) {
+                        continue;
+                    }
+                    stamps[slot * height + y] = stamp;
+                }
+                // the same box fillOval would fill
+                addCircle(vertices, xs[slot] - size / 2 + size / 2f, y - size / 2 + size / 2f, size / 2f);
+            }
+        }
+    }
+
+    // A circle as four cubic curves, as Ellipse2D iterates it but without an object per vertex
+    private static void addCircle(Path2D.Float path, float centerX, float centerY, float radius) {
+        float control = radius * CIRCLE_CONTROL;
+        path.moveTo(centerX + radius, centerY);
+        path.curveTo(centerX + radius, centerY + control, centerX + control, centerY + radius, centerX, centerY + radius);
+        path.curveTo(centerX - control, centerY + radius, centerX - radius, centerY + control, centerX - radius, centerY);
+        path.curveTo(centerX - radius, centerY - control, centerX - control, centerY - radius, centerX, centerY - radius);
+        path.curveTo(centerX + control, centerY - radius, centerX + radius, centerY - control, centerX + radius, centerY);
+        path.closePath();
+    }
+}
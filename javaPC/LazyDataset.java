@@ -0,0 +1,90 @@
+package javaPC;
+
+import java.util.Arrays;
+
+/**
+ * Dataset of a wide file whose attribute columns are parsed when they are first read, typically once their
+ * axes come into view. Loading only indexes where each row starts and reads the class column; columns are
+ * then kept in a least recently used cache under a memory budget and parsed again from the file when needed
+ * after eviction. Ranges are remembered for every column parsed. Rows cannot be added.
+ */
+public class LazyDataset extends Dataset {
+
+    private final MappedCsvParser.ColumnIndex index;
+    private final ColumnCache cache;
+    // {min, max} of every column parsed so far, null for the others
+    private final float[][] ranges;
+
+    protected LazyDataset(String[] header, MappedCsvParser.ColumnIndex index, ColumnCache cache) {
+        super(header, 1);
+        this.index = index;
+        this.cache = cache;
+        this.ranges = new float[header.length - 1][];
+    }
+
+    // Shared with the plot model, which keeps its normalized coordinates in it
+    protected ColumnCache getColumnCache() {
+        return cache;
+    }
+
+    @Override
+    protected void addRow(float[] values, String className) {
+        throw new UnsupportedOperationException("Rows cannot be added to a dataset read on demand");
+    }
+
+    @Override
+    public float[] getColumn(int col) {
+        return getColumns(new int[] {col})[0];
+    }
+
+    /**
+     * The missing columns are parsed together in one pass over the file. They are returned whether or not
+     * the cache keeps them, so a caller may ask for more columns than the budget holds.
+     */
+    @Override
+    protected synchronized float[][] getColumns(int[] cols) {
+        float[][] columns = new float[cols.length][];
+        int[] missing = new int[cols.length];
+        int missingCount = 0;
+        for (int i = 0; i < cols.length; i++) {
+            columns[i] = cache.get(cols[i], ColumnCache.VALUES);
+            if (columns[i] == null) {
+                missing[missingCount++] = cols[i];
+            }
+        }
+        if (missingCount == 0) {
+            return columns;
+        }
+
+        Metrics.ColumnLoad load = new Metrics.ColumnLoad();
+        missing = Arrays.copyOf(missing, missingCount);
+        float[][] parsedRanges = new float[missingCount][];
+        float[][] parsed = index.parseColumns(missing, parsedRanges);
+        load.finish(missingCount, getRowCount());
+        for (int i = 0; i < missingCount; i++) {
+            ranges[missing[i]] = parsedRanges[i];
+            cache.put(missing[i], ColumnCache.VALUES, parsed[i]);
+        }
+        for (int i = 0, next = 0; i < cols.length; i++) {
+            if (columns[i] == null) {
+                columns[i] = parsed[next++];
+            }
+        }
+        return columns;
+    }
+
+    // A tooltip reads a few values of one row, those come straight from the file unless the column is cached
+    @Override
+    public float getValue(int row, int col) {
+        float[] column = cache.get(col, ColumnCache.VALUES);
+        return column != null ? column[row] : index.parseValue(row, col);
+    }
+
+    @Override
+    protected synchronized float[] getTrackedRange(int col) {
+        if (ranges[col] == null) {
+            getColumn(col);
+        }
+        return ranges[col].clone();
+    }
+}
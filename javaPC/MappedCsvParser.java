@@ -0,0 +1,893 @@
+package javaPC;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Memory mapped CSV ingestion, parses newline aligned chunks of the file in parallel
+ */
+public class MappedCsvParser {
+
+    // Chunks stay far below the 2 GB limit of a single MappedByteBuffer
+    private static final long MIN_CHUNK_SIZE = 4L << 20;
+    private static final long MAX_CHUNK_SIZE = 256L << 20;
+    private static final int SCAN_WINDOW = 64 << 10;
+
+    // Exact powers of ten, a product or quotient of one with a mantissa up to 2^53 rounds correctly to double
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+    // the largest array the JVM allocates
+    private static final int MAX_ROWS = Integer.MAX_VALUE - 8;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    // the low double mantissa bits a float drops, and their pattern on a value halfway between two floats
+    private static final long FLOAT_ROUNDING_BITS = (1L << 29) - 1;
+    private static final long FLOAT_MIDPOINT = 1L << 28;
+
+    protected static Dataset readDataset(File csvFile) throws IOException {
+        try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long headerEnd = findLineStart(channel, 0, size);
+            if (headerEnd == 0) {
+                throw new IOException("Empty CSV file: " + csvFile.getName());
+            }
+            String[] header = readHeader(channel, headerEnd);
+            int numAttributes = header.length - 1;
+
+            List<Chunk> chunks = splitChunks(channel, headerEnd, size, numAttributes);
+
+            // first pass counts rows so every chunk can parse straight into its slice of the columns
+            try {
+                runAll(chunks, Chunk::countRows);
+                int totalRows = assignRowOffsets(csvFile, chunks);
+
+                float[][] columns = new float[numAttributes][totalRows];
+                int[] classIds = new int[totalRows];
+                runAll(chunks, chunk -> chunk.parse(columns, classIds));
+
+                // merge per chunk label dictionaries, visiting chunks in file order keeps first appearance order
+                Dataset dataset = new Dataset(header, 1);
+                for (Chunk chunk : chunks) {
+                    int[] globalIds = new int[chunk.labels.size()];
+                    for (int local = 0; local < globalIds.length; local++) {
+                        globalIds[local] = dataset.internClass(chunk.labels.get(local));
+                    }
+                    for (int row = chunk.rowOffset; row < chunk.rowOffset + chunk.rows; row++) {
+                        classIds[row] = globalIds[classIds[row]];
+                    }
+                }
+                dataset.setColumns(columns, classIds, totalRows);
+                return dataset;
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    /**
+     * Read about targetRows rows sampled per class in one parallel pass. Every row is parsed for the exact
+     * ranges and class counts, but a chunk only keeps, per class, the lines with the smallest random keys.
+     * Merging those keeps a uniform sample of each class, and only the lines drawn are parsed into columns.
+     */
+    protected static SampledDataset readSampledDataset(File csvFile, int targetRows) throws IOException {
+        try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long headerEnd = findLineStart(channel, 0, size);
+            if (headerEnd == 0) {
+                throw new IOException("Empty CSV file: " + csvFile.getName());
+            }
+            String[] header = readHeader(channel, headerEnd);
+            int numAttributes = header.length - 1;
+
+            List<Chunk> chunks = splitChunks(channel, headerEnd, size, numAttributes);
+            try {
+                runAll(chunks, chunk -> chunk.sample(targetRows));
+                return mergeSamples(header, chunks, targetRows);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } finally {
+                for (Chunk chunk : chunks) {
+                    chunk.buffer = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parse the file in newline aligned chunks of about chunkSize bytes, handing each chunk's rows to sink in
+     * parallel as soon as they are parsed. Only as many chunks as there are cores are held at once, so a file
+     * far larger than the heap can be converted chunk by chunk. Class ids are local to their chunk, indexes
+     * into the labels given with it. Returns the header.
+     */
+    protected static String[] parseInChunks(File csvFile, long chunkSize, ChunkSink sink) throws IOException {
+        try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long headerEnd = findLineStart(channel, 0, size);
+            if (headerEnd == 0) {
+                throw new IOException("Empty CSV file: " + csvFile.getName());
+            }
+            String[] header = readHeader(channel, headerEnd);
+            int numAttributes = header.length - 1;
+
+            List<Chunk> chunks = new ArrayList<>();
+            long pos = headerEnd;
+            while (pos < size) {
+                long end = pos + chunkSize >= size ? size : findLineStart(channel, pos + chunkSize, size);
+                chunks.add(new Chunk(channel, pos, end, numAttributes));
+                pos = end;
+            }
+            int wave = ForkJoinPool.getCommonPoolParallelism() + 1;
+            try {
+                for (int first = 0; first < chunks.size(); first += wave) {
+                    List<Chunk> batch = chunks.subList(first, Math.min(chunks.size(), first + wave));
+                    int firstIndex = first;
+                    runAll(batch, chunk -> {
+                        chunk.countRows();
+                        float[][] columns = new float[numAttributes][chunk.rows];
+                        int[] classIds = new int[chunk.rows];
+                        chunk.parse(columns, classIds);
+                        sink.accept(firstIndex + batch.indexOf(chunk), columns, classIds, chunk.labels);
+                    });
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return header;
+        }
+    }
+
+    /**
+     * Receives the rows of one chunk of a file parsed in chunks, chunk is its place in the file
+     */
+    protected interface ChunkSink {
+        void accept(int chunk, float[][] columns, int[] classIds, List<String> labels) throws IOException;
+    }
+
+    /**
+     * Index the file for columns read on demand: one parallel pass finds where every row starts and reads its
+     * class, no value is parsed. The chunks stay mapped for the dataset's lifetime, so a column is read back
+     * from the page cache, and a row's class column is checked here so a short row fails now rather than later.
+     */
+    protected static LazyDataset indexDataset(File csvFile, ColumnCache cache) throws IOException {
+        try (FileChannel channel = FileChannel.open(csvFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            long headerEnd = findLineStart(channel, 0, size);
+            if (headerEnd == 0) {
+                throw new IOException("Empty CSV file: " + csvFile.getName());
+            }
+            String[] header = readHeader(channel, headerEnd);
+            List<Chunk> chunks = splitChunks(channel, headerEnd, size, header.length - 1);
+            try {
+                runAll(chunks, Chunk::index);
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+
+            int totalRows = assignRowOffsets(csvFile, chunks);
+            LazyDataset dataset = new LazyDataset(header, new ColumnIndex(chunks, totalRows), cache);
+            int[] classIds = new int[totalRows];
+            for (Chunk chunk : chunks) {
+                int[] globalIds = new int[chunk.labels.size()];
+                for (int local = 0; local < globalIds.length; local++) {
+                    globalIds[local] = dataset.internClass(chunk.labels.get(local));
+                }
+                for (int row = 0; row < chunk.rows; row++) {
+                    classIds[chunk.rowOffset + row] = globalIds[chunk.rowClasses[row]];
+                }
+                chunk.rowClasses = null;
+            }
+            dataset.setColumns(new float[header.length - 1][], classIds, totalRows);
+            return dataset;
+        }
+    }
+
+    /**
+     * Where each row of an indexed file starts, for parsing a few columns at a time
+     */
+    protected static class ColumnIndex {
+        private final List<Chunk> chunks;
+        private final int rowCount;
+
+        private ColumnIndex(List<Chunk> chunks, int rowCount) {
+            this.chunks = chunks;
+            this.rowCount = rowCount;
+        }
+
+        /**
+         * Parse the given columns of every row in one parallel pass, each line is only read up to the last of
+         * them. ranges receives {min, max} per column, {0, 0} when the file has no rows.
+         */
+        protected float[][] parseColumns(int[] cols, float[][] ranges) {
+            // columns in file order, so every line is walked once
+            long[] byColumn = new long[cols.length];
+            for (int i = 0; i < cols.length; i++) {
+                byColumn[i] = (long) cols[i] << 32 | i;
+            }
+            Arrays.sort(byColumn);
+            float[][] values = new float[cols.length][rowCount];
+            float[][] chunkMins = new float[chunks.size()][];
+            float[][] chunkMaxes = new float[chunks.size()][];
+            List<RecursiveAction> tasks = new ArrayList<>(chunks.size());
+            for (int c = 0; c < chunks.size(); c++) {
+                int chunkIndex = c;
+                tasks.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        chunkMins[chunkIndex] = new float[cols.length];
+                        chunkMaxes[chunkIndex] = new float[cols.length];
+                        chunks.get(chunkIndex).parseColumns(byColumn, values, chunkMins[chunkIndex], chunkMaxes[chunkIndex]);
+                    }
+                });
+            }
+            ForkJoinTask.invokeAll(tasks);
+
+            for (int i = 0; i < cols.length; i++) {
+                float min = rowCount == 0 ? 0 : Float.MAX_VALUE;
+                float max = rowCount == 0 ? 0 : -Float.MAX_VALUE;
+                for (int c = 0; c < chunks.size(); c++) {
+                    min = Math.min(min, chunkMins[c][i]);
+                    max = Math.max(max, chunkMaxes[c][i]);
+                }
+                ranges[i] = new float[] {min, max};
+            }
+            return values;
+        }
+
+        // One value read straight from the file, without parsing its column
+        protected float parseValue(int row, int col) {
+            int low = 0;
+            int high = chunks.size() - 1;
+            while (low < high) {
+                int middle = (low + high + 1) >>> 1;
+                if (chunks.get(middle).rowOffset <= row) {
+                    low = middle;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            Chunk chunk = chunks.get(low);
+            return chunk.parseCell(chunk.lineStarts[row - chunk.rowOffset], col);
+        }
+    }
+
+    private static SampledDataset mergeSamples(String[] header, List<Chunk> chunks, int targetRows) {
+        int numAttributes = header.length - 1;
+        float[] mins = new float[numAttributes];
+        float[] maxes = new float[numAttributes];
+        Arrays.fill(mins, Float.MAX_VALUE);
+        Arrays.fill(maxes, -Float.MAX_VALUE);
+
+        // global class ids in order of first appearance, chunks are visited in file order
+        List<String> classNames = new ArrayList<>();
+        HashMap<String, Integer> classLookup = new HashMap<>();
+        List<int[]> chunkClassIds = new ArrayList<>();
+        long totalRows = 0;
+        for (Chunk chunk : chunks) {
+            int[] globalIds = new int[chunk.labels.size()];
+            for (int local = 0; local < globalIds.length; local++) {
+                globalIds[local] = classLookup.computeIfAbsent(chunk.labels.get(local), name -> {
+                    classNames.add(name);
+                    return classNames.size() - 1;
+                });
+            }
+            chunkClassIds.add(globalIds);
+            totalRows += chunk.rows;
+            if (chunk.rows > 0) {
+                for (int col = 0; col < numAttributes; col++) {
+                    if (chunk.mins[col] < mins[col]) {
+                        mins[col] = chunk.mins[col];
+                    }
+                    if (chunk.maxes[col] > maxes[col]) {
+                        maxes[col] = chunk.maxes[col];
+                    }
+                }
+            }
+        }
+        if (totalRows == 0) {
+            Arrays.fill(mins, 0);
+            Arrays.fill(maxes, 0);
+        }
+
+        long[] classCounts = new long[classNames.size()];
+        for (int c = 0; c < chunks.size(); c++) {
+            for (int local = 0; local < chunkClassIds.get(c).length; local++) {
+                classCounts[chunkClassIds.get(c)[local]] += chunks.get(c).classRows[local];
+            }
+        }
+        int[] quotas = allocateQuotas(classCounts, totalRows, targetRows);
+
+        // per class, the candidates of every chunk by key, the lowest quota of them are that class's sample
+        long[] lines = new long[0];
+        int drawn = 0;
+        for (int classId = 0; classId < classNames.size(); classId++) {
+            long[] candidates = new long[0];
+            long[] candidateLines = new long[0];
+            int count = 0;
+            for (int c = 0; c < chunks.size(); c++) {
+                int[] globalIds = chunkClassIds.get(c);
+                for (int local = 0; local < globalIds.length; local++) {
+                    if (globalIds[local] != classId) {
+                        continue;
+                    }
+                    Reservoir reservoir = chunks.get(c).reservoirs.get(local);
+                    candidates = Arrays.copyOf(candidates, count + reservoir.size);
+                    candidateLines = Arrays.copyOf(candidateLines, count + reservoir.size);
+                    for (int i = 0; i < reservoir.size; i++, count++) {
+                        // key and candidate share one long, so a primitive sort orders them by key
+                        candidates[count] = ((long) reservoir.keys[i] << 32) | count;
+                        // a line is its chunk index and offset, which is also its place in the file
+                        candidateLines[count] = ((long) c << 32) | reservoir.offsets[i];
+                    }
+                }
+            }
+            Arrays.sort(candidates);
+            int quota = Math.min(quotas[classId], count);
+            lines = Arrays.copyOf(lines, drawn + quota);
+            for (int i = 0; i < quota; i++) {
+                lines[drawn++] = candidateLines[(int) candidates[i]];
+            }
+        }
+        // keep the file's row order, so the plot draws rows in the order a full load would
+        Arrays.sort(lines);
+
+        SampledDataset dataset = new SampledDataset(header, lines.length, totalRows, classCounts, mins, maxes);
+        for (String className : classNames) {
+            dataset.internClass(className);
+        }
+        float[] values = new float[numAttributes];
+        for (long line : lines) {
+            String className = chunks.get((int) (line >>> 32)).parseLine((int) line, values);
+            dataset.addRow(values, className);
+        }
+        return dataset;
+    }
+
+    // Rows drawn per class: its share of targetRows, but at least a floor so rare classes stay visible
+    private static int[] allocateQuotas(long[] classCounts, long totalRows, int targetRows) {
+        int[] quotas = new int[classCounts.length];
+        int floor = Math.max(1, targetRows / Math.max(1, 4 * classCounts.length));
+        for (int classId = 0; classId < quotas.length; classId++) {
+            long share = Math.round((double) targetRows * classCounts[classId] / Math.max(1, totalRows));
+            quotas[classId] = (int) Math.min(classCounts[classId], Math.max(floor, share));
+        }
+        return quotas;
+    }
+
+    // Give every chunk the index of its first row, the rows of all of them have to fit one array
+    private static int assignRowOffsets(File csvFile, List<Chunk> chunks) throws IOException {
+        long totalRows = 0;
+        for (Chunk chunk : chunks) {
+            if (totalRows + chunk.rows > MAX_ROWS) {
+                throw new IOException(csvFile.getName() + " has more than the " + MAX_ROWS + " rows a dataset can hold");
+            }
+            chunk.rowOffset = (int) totalRows;
+            totalRows += chunk.rows;
+        }
+        return (int) totalRows;
+    }
+
+    private static String[] readHeader(FileChannel channel, long headerEnd) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, headerEnd);
+        byte[] bytes = new byte[(int) headerEnd];
+        buffer.get(bytes);
+        String line = new String(bytes, StandardCharsets.UTF_8).stripTrailing();
+        // drop a UTF-8 byte order mark left on the header
+        if (line.startsWith("\uFEFF")) {
+            line = line.substring(1);
+        }
+        return line.split(",");
+    }
+
+    private static List<Chunk> splitChunks(FileChannel channel, long start, long size, int numAttributes) throws IOException {
+        int parallelism = ForkJoinPool.getCommonPoolParallelism() + 1;
+        long chunkSize = Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, (size - start) / (parallelism * 4L)));
+
+        List<Chunk> chunks = new ArrayList<>();
+        long pos = start;
+        while (pos < size) {
+            long end = pos + chunkSize >= size ? size : findLineStart(channel, pos + chunkSize, size);
+            chunks.add(new Chunk(channel, pos, end, numAttributes));
+            pos = end;
+        }
+        return chunks;
+    }
+
+    // Offset just past the next newline at or after from, or the file size if there is none
+    private static long findLineStart(FileChannel channel, long from, long size) throws IOException {
+        long pos = from;
+        while (pos < size) {
+            int length = (int) Math.min(SCAN_WINDOW, size - pos);
+            MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos, length);
+            for (int i = 0; i < length; i++) {
+                if (window.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += length;
+        }
+        return size;
+    }
+
+    private interface ChunkStep {
+        void run(Chunk chunk) throws IOException;
+    }
+
+    private static void runAll(List<Chunk> chunks, ChunkStep step) {
+        List<RecursiveAction> tasks = new ArrayList<>(chunks.size());
+        for (Chunk chunk : chunks) {
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    try {
+                        step.run(chunk);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /**
+     * A newline aligned byte range of the file and the rows parsed from it
+     */
+    private static class Chunk {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+        private final int numAttributes;
+
+        private MappedByteBuffer buffer;
+        private int rows;
+        private int rowOffset;
+
+        // index pass: where each row starts and its local class id, the ids are dropped once made global
+        private int[] lineStarts;
+        private int[] rowClasses;
+
+        // sampling pass: ranges, rows per local class id and each class's sampled lines
+        private float[] mins;
+        private float[] maxes;
+        private int[] classRows = new int[0];
+        private final List<Reservoir> reservoirs = new ArrayList<>();
+
+        // chunk local class dictionary, an open addressing table over the raw label bytes
+        private final List<String> labels = new ArrayList<>();
+        private final List<byte[]> labelBytes = new ArrayList<>();
+        private int[] labelTable = new int[64];
+
+        Chunk(FileChannel channel, long start, long end, int numAttributes) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+            this.numAttributes = numAttributes;
+        }
+
+        void countRows() throws IOException {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            int limit = buffer.limit();
+            int pos = 0;
+            while (pos < limit) {
+                int lineEnd = lineEnd(pos, limit);
+                if (contentEnd(pos, lineEnd) > pos) {
+                    rows++;
+                }
+                pos = lineEnd + 1;
+            }
+        }
+
+        void parse(float[][] columns, int[] classIds) {
+            int limit = buffer.limit();
+            int pos = 0;
+            int row = rowOffset;
+            while (pos < limit) {
+                int lineEnd = lineEnd(pos, limit);
+                int contentEnd = contentEnd(pos, lineEnd);
+                if (contentEnd > pos) {
+                    int cell = pos;
+                    for (int col = 0; col < numAttributes; col++) {
+                        int comma = indexOf(',', cell, contentEnd);
+                        if (comma < 0) {
+                            throw shortRow(pos);
+                        }
+                        columns[col][row] = parseFloat(cell, comma);
+                        cell = comma + 1;
+                    }
+                    classIds[row] = internLabel(cell, contentEnd);
+                    row++;
+                }
+                pos = lineEnd + 1;
+            }
+            buffer = null;
+        }
+
+        // Record each row's start and class, checking it has the class column after its attributes
+        void index() throws IOException {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            lineStarts = new int[64];
+            rowClasses = new int[64];
+            int limit = buffer.limit();
+            int pos = 0;
+            while (pos < limit) {
+                // the class column starts after the last attribute's comma, a row without it is malformed
+                int i = pos;
+                int commas = 0;
+                int classStart = -1;
+                byte c = 0;
+                while (i < limit && (c = buffer.get(i)) != '\n') {
+                    if (c == ',' && ++commas == numAttributes) {
+                        classStart = i + 1;
+                    }
+                    i++;
+                }
+                int contentEnd = contentEnd(pos, i);
+                if (contentEnd > pos) {
+                    if (classStart < 0 || classStart > contentEnd) {
+                        throw shortRow(pos);
+                    }
+                    if (rows == lineStarts.length) {
+                        lineStarts = Arrays.copyOf(lineStarts, rows * 2);
+                        rowClasses = Arrays.copyOf(rowClasses, rows * 2);
+                    }
+                    lineStarts[rows] = pos;
+                    rowClasses[rows] = internLabel(classStart, contentEnd);
+                    rows++;
+                }
+                pos = i + 1;
+            }
+            lineStarts = Arrays.copyOf(lineStarts, rows);
+        }
+
+        /**
+         * Parse the columns of byColumn, packed as column index above output index and sorted, into values and
+         * the chunk's {min, max} of each. Safe to run alongside other reads, it only reads the mapped buffer.
+         */
+        void parseColumns(long[] byColumn, float[][] values, float[] mins, float[] maxes) {
+            Arrays.fill(mins, Float.MAX_VALUE);
+            Arrays.fill(maxes, -Float.MAX_VALUE);
+            int limit = buffer.limit();
+            for (int row = 0; row < rows; row++) {
+                int cell = lineStarts[row];
+                int col = 0;
+                for (long packed : byColumn) {
+                    int wanted = (int) (packed >>> 32);
+                    int out = (int) packed;
+                    for (; col < wanted; col++) {
+                        cell = indexOf(',', cell, limit) + 1;
+                    }
+                    float value = parseFloat(cell, indexOf(',', cell, limit));
+                    values[out][rowOffset + row] = value;
+                    // NaN cells are left out of the range, as a full load scans it
+                    if (value < mins[out]) {
+                        mins[out] = value;
+                    }
+                    if (value > maxes[out]) {
+                        maxes[out] = value;
+                    }
+                }
+            }
+        }
+
+        // The value in column col of the row starting at pos
+        float parseCell(int pos, int col) {
+            int limit = buffer.limit();
+            for (int skipped = 0; skipped < col; skipped++) {
+                pos = indexOf(',', pos, limit) + 1;
+            }
+            return parseFloat(pos, indexOf(',', pos, limit));
+        }
+
+        /**
+         * Parse every row for ranges and class counts, offering each line to its class's reservoir under a
+         * random key. The seed comes from the chunk's offset, so a file samples the same rows every time.
+         */
+        void sample(int targetRows) throws IOException {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            SplittableRandom random = new SplittableRandom(start);
+            mins = new float[numAttributes];
+            maxes = new float[numAttributes];
+            Arrays.fill(mins, Float.MAX_VALUE);
+            Arrays.fill(maxes, -Float.MAX_VALUE);
+            int limit = buffer.limit();
+            int pos = 0;
+            while (pos < limit) {
+                int lineEnd = lineEnd(pos, limit);
+                int contentEnd = contentEnd(pos, lineEnd);
+                if (contentEnd > pos) {
+                    int cell = pos;
+                    for (int col = 0; col < numAttributes; col++) {
+                        int comma = indexOf(',', cell, contentEnd);
+                        if (comma < 0) {
+                            throw shortRow(pos);
+                        }
+                        float value = parseFloat(cell, comma);
+                        // compared rather than Math.min/max, so a NaN cell is skipped as in a full load
+                        if (value < mins[col]) {
+                            mins[col] = value;
+                        }
+                        if (value > maxes[col]) {
+                            maxes[col] = value;
+                        }
+                        cell = comma + 1;
+                    }
+                    int classId = internLabel(cell, contentEnd);
+                    if (classId == reservoirs.size()) {
+                        reservoirs.add(new Reservoir(targetRows));
+                        classRows = Arrays.copyOf(classRows, reservoirs.size());
+                    }
+                    classRows[classId]++;
+                    reservoirs.get(classId).offer(random.nextInt() >>> 1, pos);
+                    rows++;
+                }
+                pos = lineEnd + 1;
+            }
+        }
+
+        // Parse the line starting at pos into values, returning its class label
+        String parseLine(int pos, float[] values) {
+            int contentEnd = contentEnd(pos, lineEnd(pos, buffer.limit()));
+            int cell = pos;
+            for (int col = 0; col < numAttributes; col++) {
+                int comma = indexOf(',', cell, contentEnd);
+                values[col] = parseFloat(cell, comma);
+                cell = comma + 1;
+            }
+            return labels.get(internLabel(cell, contentEnd));
+        }
+
+        // The chunk's rows are parsed alongside the others, so a malformed one is located within its chunk
+        private NumberFormatException shortRow(int pos) {
+            int line = 1;
+            for (int i = 0; i < pos; i++) {
+                if (buffer.get(i) == '\n') {
+                    line++;
+                }
+            }
+            return new NumberFormatException("Line " + line + " of the chunk at byte " + start + " has fewer than "
+                    + (numAttributes + 1) + " values");
+        }
+
+        private int lineEnd(int pos, int limit) {
+            int index = indexOf('\n', pos, limit);
+            return index < 0 ? limit : index;
+        }
+
+        private int contentEnd(int pos, int lineEnd) {
+            return lineEnd > pos && buffer.get(lineEnd - 1) == '\r' ? lineEnd - 1 : lineEnd;
+        }
+
+        private int indexOf(char c, int from, int to) {
+            for (int i = from; i < to; i++) {
+                if (buffer.get(i) == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Parses plain decimal and exponent notation without allocating when one double operation is exact, a
+         * mantissa up to 2^53 and an exponent within 22. Longer mantissas, larger exponents, doubles on a float
+         * rounding midpoint and anything else go through Float.parseFloat, so the result always matches it.
+         */
+        private float parseFloat(int from, int to) {
+            while (from < to && isBlank(buffer.get(from))) {
+                from++;
+            }
+            while (to > from && isBlank(buffer.get(to - 1))) {
+                to--;
+            }
+
+            int i = from;
+            boolean negative = false;
+            if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                negative = buffer.get(i) == '-';
+                i++;
+            }
+
+            // digits past the 18th would overflow the mantissa, such a value is parsed the slow way
+            long mantissa = 0;
+            int significantDigits = 0;
+            int exponent = 0;
+            boolean anyDigits = false;
+            boolean tooLong = false;
+            byte c;
+            while (i < to && (c = buffer.get(i)) >= '0' && c <= '9') {
+                if (significantDigits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0) {
+                        significantDigits++;
+                    }
+                } else {
+                    tooLong = true;
+                }
+                anyDigits = true;
+                i++;
+            }
+            if (i < to && buffer.get(i) == '.') {
+                i++;
+                while (i < to && (c = buffer.get(i)) >= '0' && c <= '9') {
+                    if (significantDigits < 18) {
+                        mantissa = mantissa * 10 + (c - '0');
+                        if (mantissa != 0) {
+                            significantDigits++;
+                        }
+                        exponent--;
+                    } else {
+                        tooLong = true;
+                    }
+                    anyDigits = true;
+                    i++;
+                }
+            }
+            if (anyDigits && i < to && (buffer.get(i) | 0x20) == 'e') {
+                i++;
+                boolean negativeExponent = false;
+                if (i < to && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+                    negativeExponent = buffer.get(i) == '-';
+                    i++;
+                }
+                int explicitExponent = 0;
+                boolean exponentDigits = false;
+                while (i < to && (c = buffer.get(i)) >= '0' && c <= '9' && explicitExponent < 10000) {
+                    explicitExponent = explicitExponent * 10 + (c - '0');
+                    exponentDigits = true;
+                    i++;
+                }
+                if (!exponentDigits) {
+                    return slowParseFloat(from, to);
+                }
+                exponent += negativeExponent ? -explicitExponent : explicitExponent;
+            }
+
+            if (!anyDigits || i != to || tooLong || mantissa > MAX_EXACT_MANTISSA || exponent < -22 || exponent > 22) {
+                return slowParseFloat(from, to);
+            }
+            double value = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+            // only a double exactly halfway between two floats can round to float differently from the decimal
+            if ((Double.doubleToRawLongBits(value) & FLOAT_ROUNDING_BITS) == FLOAT_MIDPOINT) {
+                return slowParseFloat(from, to);
+            }
+            return (float) (negative ? -value : value);
+        }
+
+        private float slowParseFloat(int from, int to) {
+            return Float.parseFloat(new String(bytes(from, to), StandardCharsets.UTF_8));
+        }
+
+        private boolean isBlank(byte c) {
+            return c == ' ' || c == '\t';
+        }
+
+        private byte[] bytes(int from, int to) {
+            byte[] bytes = new byte[to - from];
+            buffer.get(from, bytes);
+            return bytes;
+        }
+
+        private int internLabel(int from, int to) {
+            int hash = 0;
+            for (int i = from; i < to; i++) {
+                hash = 31 * hash + buffer.get(i);
+            }
+            int mask = labelTable.length - 1;
+            int slot = mix(hash) & mask;
+            while (labelTable[slot] != 0) {
+                int id = labelTable[slot] - 1;
+                if (matches(labelBytes.get(id), from, to)) {
+                    return id;
+                }
+                slot = (slot + 1) & mask;
+            }
+
+            byte[] bytes = bytes(from, to);
+            int id = labels.size();
+            labels.add(new String(bytes, StandardCharsets.UTF_8));
+            labelBytes.add(bytes);
+            labelTable[slot] = id + 1;
+            if (labels.size() * 2 > labelTable.length) {
+                rehashLabels();
+            }
+            return id;
+        }
+
+        private boolean matches(byte[] label, int from, int to) {
+            if (label.length != to - from) {
+                return false;
+            }
+            for (int i = 0; i < label.length; i++) {
+                if (label[i] != buffer.get(from + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehashLabels() {
+            labelTable = new int[labelTable.length * 2];
+            int mask = labelTable.length - 1;
+            for (int id = 0; id < labelBytes.size(); id++) {
+                int hash = 0;
+                for (byte b : labelBytes.get(id)) {
+                    hash = 31 * hash + b;
+                }
+                int slot = mix(hash) & mask;
+                while (labelTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                labelTable[slot] = id + 1;
+            }
+        }
+
+        private static int mix(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+    }
+
+    /**
+     * The lines with the smallest keys offered so far, up to a capacity, in a max heap on the key
+     */
+    private static class Reservoir {
+        private final int capacity;
+        private int[] keys = new int[16];
+        private int[] offsets = new int[16];
+        private int size;
+
+        Reservoir(int capacity) {
+            this.capacity = Math.max(1, capacity);
+        }
+
+        void offer(int key, int offset) {
+            if (size < capacity) {
+                if (size == keys.length) {
+                    keys = Arrays.copyOf(keys, Math.min(capacity, size * 2));
+                    offsets = Arrays.copyOf(offsets, keys.length);
+                }
+                // sift the new line up from the end
+                int i = size++;
+                while (i > 0 && keys[(i - 1) / 2] < key) {
+                    keys[i] = keys[(i - 1) / 2];
+                    offsets[i] = offsets[(i - 1) / 2];
+                    i = (i - 1) / 2;
+                }
+                keys[i] = key;
+                offsets[i] = offset;
+            } else if (key < keys[0]) {
+                // replace the largest key and sift down
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && keys[child + 1] > keys[child]) {
+                        child++;
+                    }
+                    if (keys[child] <= key) {
+                        break;
+                    }
+                    keys[i] = keys[child];
+                    offsets[i] = offsets[child];
+                    i = child;
+                }
+                keys[i] = key;
+                offsets[i] = offset;
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package javaPC;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Process wide timers and counters for loading and drawing, cheap enough to stay on. Every timed step also
+ * commits a Flight Recorder event, so a recording started with -XX:StartFlightRecording shows where a slow
+ * frame or load spent its time without attaching a profiler.
+ */
+public class Metrics {
+
+    // timers
+    protected static final String LOAD = "csv.load";
+    protected static final String COLUMN_LOAD = "csv.columns";
+    protected static final String NORMALIZE = "model.normalize";
+    protected static final String LAYER_DRAW = "layer.draw";
+    protected static final String FRAME = "frame.paint";
+    // counters
+    protected static final String BYTES_READ = "csv.bytesRead";
+    protected static final String ROWS_LOADED = "csv.rows";
+    protected static final String COLUMNS_PARSED = "csv.columnsParsed";
+    protected static final String ROWS_DRAWN = "layer.rows";
+    protected static final String DATASET_CACHE_HIT = "cache.dataset.hit";
+    protected static final String DATASET_CACHE_MISS = "cache.dataset.miss";
+    protected static final String LAYER_CACHE_HIT = "cache.layer.hit";
+    protected static final String LAYER_CACHE_MISS = "cache.layer.miss";
+    protected static final String STRIP_CACHE_HIT = "cache.strips.hit";
+    protected static final String STRIP_CACHE_MISS = "cache.strips.miss";
+    protected static final String COLUMN_CACHE_HIT = "cache.columns.hit";
+    protected static final String COLUMN_CACHE_MISS = "cache.columns.miss";
+    protected static final String CHUNKS_READ = "chunks.read";
+    protected static final String CHUNKS_SKIPPED = "chunks.skipped";
+
+    private static final Map<String, Timer> timers = new ConcurrentHashMap<>();
+    private static final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+
+    private Metrics() {
+    }
+
+    protected static void add(String counter, long amount) {
+        counters.computeIfAbsent(counter, name -> new LongAdder()).add(amount);
+    }
+
+    protected static void time(String timer, long nanos) {
+        timers.computeIfAbsent(timer, name -> new Timer()).record(nanos);
+    }
+
+    public static long getCount(String counter) {
+        LongAdder adder = counters.get(counter);
+        return adder == null ? 0 : adder.sum();
+    }
+
+    // Calls, total, longest and latest duration of a timer, all zero before its first call
+    public static long getCalls(String timer) {
+        Timer stats = timers.get(timer);
+        return stats == null ? 0 : stats.calls.sum();
+    }
+
+    public static long getTotalNanos(String timer) {
+        Timer stats = timers.get(timer);
+        return stats == null ? 0 : stats.totalNanos.sum();
+    }
+
+    public static long getMaxNanos(String timer) {
+        Timer stats = timers.get(timer);
+        return stats == null ? 0 : stats.maxNanos.get();
+    }
+
+    public static long getLastNanos(String timer) {
+        Timer stats = timers.get(timer);
+        return stats == null ? 0 : stats.lastNanos.get();
+    }
+
+    public static void reset() {
+        timers.clear();
+        counters.clear();
+    }
+
+    /**
+     * Every timer and counter as a JSON object, with rows per second worked out for loading and drawing
+     */
+    public static String toJson() {
+        StringBuilder json = new StringBuilder("{\n  \"timers\": {");
+        String separator = "\n";
+        for (String name : new TreeMap<>(timers).keySet()) {
+            json.append(separator).append(String.format(Locale.ROOT,
+                    "    \"%s\": {\"calls\": %d, \"totalMs\": %.3f, \"meanMs\": %.3f, \"maxMs\": %.3f, \"lastMs\": %.3f}",
+                    name, getCalls(name), millis(getTotalNanos(name)), millis(getTotalNanos(name)) / Math.max(1, getCalls(name)),
+                    millis(getMaxNanos(name)), millis(getLastNanos(name))));
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"counters\": {");
+        separator = "\n";
+        for (String name : new TreeMap<>(counters).keySet()) {
+            json.append(separator).append(String.format(Locale.ROOT, "    \"%s\": %d", name, getCount(name)));
+            separator = ",\n";
+        }
+        json.append("\n  },\n  \"rates\": {\n");
+        json.append(String.format(Locale.ROOT, "    \"csv.rowsPerSecond\": %.0f,%n", perSecond(ROWS_LOADED, LOAD)));
+        json.append(String.format(Locale.ROOT, "    \"csv.bytesPerSecond\": %.0f,%n", perSecond(BYTES_READ, LOAD)));
+        json.append(String.format(Locale.ROOT, "    \"layer.rowsPerSecond\": %.0f%n", perSecond(ROWS_DRAWN, LAYER_DRAW)));
+        json.append("  }\n}\n");
+        return json.toString();
+    }
+
+    // A counter over the time spent in a timer, 0 before the timer ran
+    public static double perSecond(String counter, String timer) {
+        long nanos = getTotalNanos(timer);
+        return nanos == 0 ? 0 : getCount(counter) * 1e9 / nanos;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static class Timer {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong lastNanos = new AtomicLong();
+
+        void record(long nanos) {
+            calls.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+            lastNanos.set(nanos);
+        }
+    }
+
+    /**
+     * Flight Recorder event that starts when it is created and adds its duration to a timer when finished
+     */
+    private abstract static class TimedEvent extends Event {
+        private final transient long startNanos = System.nanoTime();
+
+        TimedEvent() {
+            begin();
+        }
+
+        // Returns the duration in nanoseconds
+        protected long finish(String timer) {
+            long nanos = System.nanoTime() - startNanos;
+            time(timer, nanos);
+            commit();
+            return nanos;
+        }
+    }
+
+    @Name("javaPC.CsvLoad")
+    @Label("CSV Load")
+    @Category("Parallel Coordinates")
+    @Description("A dataset read from a CSV file or its binary cache")
+    protected static class CsvLoad extends TimedEvent {
+        @Label("File")
+        protected String file;
+        @Label("Source")
+        @Description("parse, sample, cache, index or chunks")
+        protected String source;
+        @Label("Bytes Read")
+        @DataAmount
+        protected long bytes;
+        @Label("Rows")
+        protected long rows;
+
+        protected void finish(String file, String source, long bytes, long rows) {
+            this.file = file;
+            this.source = source;
+            this.bytes = bytes;
+            this.rows = rows;
+            add(BYTES_READ, bytes);
+            add(ROWS_LOADED, rows);
+            finish(LOAD);
+        }
+    }
+
+    @Name("javaPC.ColumnLoad")
+    @Label("Column Load")
+    @Category("Parallel Coordinates")
+    @Description("Columns of a dataset read on demand parsed from its file")
+    protected static class ColumnLoad extends TimedEvent {
+        @Label("Columns")
+        protected int columns;
+        @Label("Rows")
+        protected long rows;
+
+        protected void finish(int columns, long rows) {
+            this.columns = columns;
+            this.rows = rows;
+            add(COLUMNS_PARSED, columns);
+            finish(COLUMN_LOAD);
+        }
+    }
+
+    @Name("javaPC.Normalize")
+    @Label("Normalize")
+    @Category("Parallel Coordinates")
+    @Description("Axis ranges and [0, 1] coordinates computed for rows of a dataset")
+    protected static class Normalize extends TimedEvent {
+        @Label("Rows")
+        protected long rows;
+        @Label("Columns")
+        protected int columns;
+        @Label("Rescaled")
+        @Description("Whether every row was scaled again rather than only appended ones")
+        protected boolean rescaled;
+
+        protected void finish(long rows, int columns, boolean rescaled) {
+            this.rows = rows;
+            this.columns = columns;
+            this.rescaled = rescaled;
+            finish(NORMALIZE);
+        }
+    }
+
+    @Name("javaPC.LayerDraw")
+    @Label("Layer Draw")
+    @Category("Parallel Coordinates")
+    @Description("A batch of rows drawn into the plot layer")
+    protected static class LayerDraw extends TimedEvent {
+        @Label("Engine")
+        protected String engine;
+        @Label("Rows")
+        protected long rows;
+
+        protected void finish(String engine, long rows) {
+            this.engine = engine;
+            this.rows = rows;
+            add(ROWS_DRAWN, rows);
+            finish(LAYER_DRAW);
+        }
+    }
+
+    @Name("javaPC.Frame")
+    @Label("Frame")
+    @Category("Parallel Coordinates")
+    @Description("One paint of the plot panel")
+    protected static class Frame extends TimedEvent {
+        @Label("Width")
+        protected int width;
+        @Label("Height")
+        protected int height;
+        @Label("Axes")
+        protected int axes;
+        @Label("Layer Cached")
+        @Description("Whether the polylines came from the cached layer")
+        protected boolean layerCached;
+
+        protected void finish(int width, int height, int axes, boolean layerCached) {
+            this.width = width;
+            this.height = height;
+            this.axes = axes;
+            this.layerCached = layerCached;
+            add(layerCached ? LAYER_CACHE_HIT : LAYER_CACHE_MISS, 1);
+            finish(FRAME);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package javaPC;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+/**
+ * Software rasterizer drawing polylines straight into an int pixel buffer, one strip per axis pair in parallel
+ */
+public class ParallelRasterizer {
+
+    protected static void clear(BufferedImage layer) {
+        Arrays.fill(((DataBufferInt) layer.getRaster().getDataBuffer()).getData(), 0);
+    }
+
+    // Blend rows[from, to) over a TYPE_INT_ARGB_PRE layer, a null rows array means rows from to to in order. Each strip
+    // owns a disjoint range of pixel columns, so strips blend without any locking
+    protected static void draw(BufferedImage layer, PlotGeometry geometry, AxisView view, int[] rows, int from, int to,
+                               int[] classIds, int[] classColors, int vertexSize, AxisHistogram vertexScale) {
+        draw(layer, geometry, view, rows, from, to, classIds, classColors, vertexSize, vertexScale, null);
+    }
+
+    // Same, only drawing the strips marked in strips, or every strip when it is null
+    protected static void draw(BufferedImage layer, PlotGeometry geometry, AxisView view, int[] rows, int from, int to,
+                               int[] classIds, int[] classColors, int vertexSize, AxisHistogram vertexScale, boolean[] strips) {
+        int[] pixels = ((DataBufferInt) layer.getRaster().getDataBuffer()).getData();
+        forEachStrip(geometry, strips, strip -> {
+            BlendStrip target = new BlendStrip(pixels, geometry, view, strip);
+            for (int i = from; i < to; i++) {
+                int row = rows == null ? i : rows[i];
+                target.drawRow(row, classColors[classIds[row]], vertexSize, vertexScale);
+            }
+        });
+    }
+
+    protected static int getStripCount(PlotGeometry geometry) {
+        return geometry.getAxisCount() == 0 ? 0 : Math.max(1, geometry.getAxisCount() - 1);
+    }
+
+    protected static int getStripLeft(PlotGeometry geometry, int strip) {
+        return strip == 0 ? 0 : geometry.getAxisX(strip);
+    }
+
+    protected static int getStripRight(PlotGeometry geometry, int strip) {
+        return strip == getStripCount(geometry) - 1 ? geometry.getWidth() : geometry.getAxisX(strip + 1);
+    }
+
+    // Run one task per strip on the fork-join pool and wait for all of them
+    protected static void forEachStrip(PlotGeometry geometry, IntConsumer stripWork) {
+        forEachStrip(geometry, null, stripWork);
+    }
+
+    protected static void forEachStrip(PlotGeometry geometry, boolean[] strips, IntConsumer stripWork) {
+        int stripCount = getStripCount(geometry);
+        List<RecursiveAction> tasks = new ArrayList<>(stripCount);
+        for (int strip = 0; strip < stripCount; strip++) {
+            if (strips != null && !strips[strip]) {
+                continue;
+            }
+            int index = strip;
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    stripWork.accept(index);
+                }
+            });
+        }
+        ForkJoinTask.invokeAll(tasks);
+    }
+
+    /**
+     * A vertical band of the layer between two neighbouring axes, drawn by a single thread.
+     * It owns columns [left, right), the outer strips extend to the edges of the layer.
+     */
+    protected abstract static class Strip {
+        protected final PlotGeometry geometry;
+        protected final AxisView view;
+        protected final int width;
+        protected final int height;
+        protected final int leftAxis;
+        protected final int left;
+        protected final int right;
+
+        // normalized values of the previous, left and right slots of this strip
+        private final float[] previousValues;
+        private final float[] leftValues;
+        private final float[] rightValues;
+
+        protected Strip(PlotGeometry geometry, AxisView view, int strip) {
+            this.geometry = geometry;
+            this.view = view;
+            this.width = geometry.getWidth();
+            this.height = geometry.getHeight();
+            this.leftAxis = strip;
+            this.left = getStripLeft(geometry, strip);
+            this.right = getStripRight(geometry, strip);
+            this.previousValues = strip > 0 ? view.getSlotValues(strip - 1) : null;
+            this.leftValues = view.getSlotValues(strip);
+            this.rightValues = strip + 1 < view.getSlotCount() ? view.getSlotValues(strip + 1) : null;
+        }
+
+        // Called for every covered pixel inside this strip's columns
+        protected abstract void plot(int index, int argb);
+
+        // Same order as the Java2D path, each vertex lands on top of the edge arriving at it
+        // vertexScale, when given, sizes vertices by their histogram bin instead of vertexSize
+        protected void drawRow(int row, int argb, int vertexSize, AxisHistogram vertexScale) {
+            int x0 = geometry.getAxisX(leftAxis);
+            int y0 = geometry.toY(leftValues[row]);
+            if (previousValues != null) {
+                // the edge arriving from the previous strip ends in this strip's first column
+                int xp = geometry.getAxisX(leftAxis - 1);
+                int yp = geometry.toY(previousValues[row]);
+                drawLine(x0, y0, xp, yp, argb, true);
+            }
+            fillVertex(x0, y0, sizeOf(leftAxis, leftValues[row], vertexSize, vertexScale), argb);
+
+            if (rightValues != null) {
+                int x1 = geometry.getAxisX(leftAxis + 1);
+                int y1 = geometry.toY(rightValues[row]);
+                drawLine(x0, y0, x1, y1, argb, false);
+                fillVertex(x1, y1, sizeOf(leftAxis + 1, rightValues[row], vertexSize, vertexScale), argb);
+            }
+        }
+
+        // Bands have no single attribute histogram, so their vertices keep the plain size
+        private int sizeOf(int slot, float normalized, int vertexSize, AxisHistogram vertexScale) {
+            if (vertexSize <= 0 || vertexScale == null || view.isBand(slot)) {
+                return vertexSize;
+            }
+            return vertexScale.getVertexSize(view.getAttribute(slot), normalized);
+        }
+
+        // Bresenham line clipped to the strip, the first column variant skips the shared start pixel
+        private void drawLine(int x0, int y0, int x1, int y1, int argb, boolean firstColumnOnly) {
+            int dx = Math.abs(x1 - x0);
+            int dy = -Math.abs(y1 - y0);
+            int sx = x0 < x1 ? 1 : -1;
+            int sy = y0 < y1 ? 1 : -1;
+            int err = dx + dy;
+            int x = x0;
+            int y = y0;
+            while (true) {
+                if (firstColumnOnly && x != x0) {
+                    return;
+                }
+                if (!firstColumnOnly || y != y0) {
+                    plot(x, y, argb);
+                }
+                if (x == x1 && y == y1) {
+                    return;
+                }
+                int e2 = 2 * err;
+                if (e2 >= dy) {
+                    err += dy;
+                    x += sx;
+                }
+                if (e2 <= dx) {
+                    err += dx;
+                    y += sy;
+                }
+            }
+        }
+
+        // Disc matching fillOval(x - size / 2, y - size / 2, size, size), pixel centers inside the circle
+        private void fillVertex(int x, int y, int size, int argb) {
+            if (size <= 0) {
+                return;
+            }
+            int boxX = x - size / 2;
+            int boxY = y - size / 2;
+            double radius = size / 2.0;
+            for (int py = 0; py < size; py++) {
+                double dy = py + 0.5 - radius;
+                double halfSpan = Math.sqrt(Math.max(0, radius * radius - dy * dy));
+                int from = (int) Math.ceil(radius - halfSpan - 0.5);
+                int to = (int) Math.floor(radius + halfSpan - 0.5);
+                for (int px = from; px <= to; px++) {
+                    plot(boxX + px, boxY + py, argb);
+                }
+            }
+        }
+
+        private void plot(int x, int y, int argb) {
+            if (x >= left && x < right && y >= 0 && y < height) {
+                plot(y * width + x, argb);
+            }
+        }
+    }
+
+    /**
+     * Strip that alpha blends straight into the layer's pixels
+     */
+    private static class BlendStrip extends Strip {
+        private final int[] pixels;
+
+        BlendStrip(int[] pixels, PlotGeometry geometry, AxisView view, int strip) {
+            super(geometry, view, strip);
+            this.pixels = pixels;
+        }
+
+        // Source over blend of a non-premultiplied color into the premultiplied buffer
+        @Override
+        protected void plot(int index, int argb) {
+            int alpha = argb >>> 24;
+            if (alpha == 255) {
+                pixels[index] = argb;
+                return;
+            }
+            if (alpha == 0) {
+                return;
+            }
+            int inverse = 255 - alpha;
+            int dst = pixels[index];
+            int a = alpha + div255((dst >>> 24) * inverse);
+            int r = div255(((argb >> 16) & 0xFF) * alpha) + div255(((dst >> 16) & 0xFF) * inverse);
+            int g = div255(((argb >> 8) & 0xFF) * alpha) + div255(((dst >> 8) & 0xFF) * inverse);
+            int b = div255((argb & 0xFF) * alpha) + div255((dst & 0xFF) * inverse);
+            pixels[index] = (a << 24) | (r << 16) | (g << 8) | b;
+        }
+
+        private static int div255(int value) {
+            return (value + 1 + (value >> 8)) >> 8;
+        }
+    }
+}
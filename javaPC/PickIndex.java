@@ -0,0 +1,222 @@
+package javaPC;
+
+import java.util.Arrays;
+
+/**
+ * Finds the polyline under a point without testing every row. Each gap between neighbouring slots gets a
+ * grid of cells keyed by the segment's left and right value bins, stored as row and value arrays ordered by
+ * cell, 12 bytes per row for each gap picked in. A pick only visits the cells a line through the point can
+ * come from, then tests their rows exactly.
+ */
+public class PickIndex {
+
+    // grid size bounds per side of a gap, the grid grows with the row count so cells hold a few dozen rows
+    private static final int MIN_BINS = 8;
+    private static final int MAX_BINS = 256;
+    private static final int ROWS_PER_CELL = 16;
+    // bins hold about the same number of rows, cut along a histogram this fine
+    private static final int BUCKETS = 4096;
+    // rows appended after a gap was indexed are tested one by one until there are this fraction of the indexed ones
+    private static final int REBUILD_FRACTION = 8;
+
+    private final AxisView view;
+
+    // per gap, bin edges over [0, 1] of its left and right slot, the first position of each cell in cellRows
+    // and the rows ordered by cell, built on the first pick
+    private final float[][] leftEdges;
+    private final float[][] rightEdges;
+    private final int[][] cellStarts;
+    private final int[][] cellRows;
+    // the rows' left and right values in the same order, so a cell's candidates are read front to back
+    private final float[][] cellLeft;
+    private final float[][] cellRight;
+
+    protected PickIndex(AxisView view) {
+        this.view = view;
+        int gaps = Math.max(0, view.getSlotCount() - 1);
+        leftEdges = new float[gaps][];
+        rightEdges = new float[gaps][];
+        cellStarts = new int[gaps][];
+        cellRows = new int[gaps][];
+        cellLeft = new float[gaps][];
+        cellRight = new float[gaps][];
+    }
+
+    protected AxisView getView() {
+        return view;
+    }
+
+    /**
+     * Row whose segment passes closest to the point within tolerance pixels, or -1. Later rows are drawn
+     * on top, so they win ties. selection, when given, limits the pick to the rows it holds.
+     */
+    protected int pick(PlotGeometry geometry, int x, int y, int tolerance, long[] selection) {
+        int gap = gapAt(geometry, x);
+        if (gap < 0) {
+            return -1;
+        }
+        int rowCount = view.getModel().getDataset().getRowCount();
+        if (cellRows[gap] == null || rowCount - cellRows[gap].length > cellRows[gap].length / REBUILD_FRACTION) {
+            build(gap, rowCount);
+        }
+
+        float x0 = geometry.getAxisX(gap);
+        float t = (x - x0) / (geometry.getAxisX(gap + 1) - x0);
+        float height = geometry.getAxisBottom() - PlotGeometry.AXIS_TOP;
+        float target = (geometry.getAxisBottom() - y) / height;
+        float reach = tolerance / height;
+        Candidate best = new Candidate(target, reach, t, selection);
+
+        int[] starts = cellStarts[gap];
+        int[] rows = cellRows[gap];
+        float[] lefts = cellLeft[gap];
+        float[] rights = cellRight[gap];
+        int rightBins = rightEdges[gap].length - 1;
+        // walk the side the point is farther from, its weight is at least one half so the bounds stay tight
+        boolean outerLeft = t >= 0.5f;
+        float weight = outerLeft ? t : 1 - t;
+        float[] outerEdges = outerLeft ? leftEdges[gap] : rightEdges[gap];
+        float[] innerEdges = outerLeft ? rightEdges[gap] : leftEdges[gap];
+        for (int outer = 0; outer + 1 < outerEdges.length; outer++) {
+            // inner bins whose values, blended with this outer bin's, can land within reach of the target
+            float highest = (target + reach - (1 - weight) * outerEdges[outer]) / weight;
+            float lowest = (target - reach - (1 - weight) * outerEdges[outer + 1]) / weight;
+            int innerFirst = firstEdgeAtLeast(innerEdges, lowest) - 1;
+            int innerLast = firstEdgeAtLeast(innerEdges, Math.nextUp(highest)) - 1;
+            innerFirst = Math.max(0, innerFirst);
+            innerLast = Math.min(innerEdges.length - 2, innerLast);
+            for (int inner = innerFirst; inner <= innerLast; inner++) {
+                int cell = outerLeft ? outer * rightBins + inner : inner * rightBins + outer;
+                for (int i = starts[cell]; i < starts[cell + 1]; i++) {
+                    best.test(rows[i], lefts[i], rights[i]);
+                }
+            }
+        }
+        // rows streamed in since the gap was indexed
+        float[] left = view.getSlotValues(gap);
+        float[] right = view.getSlotValues(gap + 1);
+        for (int row = rows.length; row < rowCount; row++) {
+            best.test(row, left[row], right[row]);
+        }
+        return best.row;
+    }
+
+    // Gap between two slots containing x, -1 outside the outermost axes
+    private int gapAt(PlotGeometry geometry, int x) {
+        if (cellRows.length == 0 || x < geometry.getAxisX(0) || x > geometry.getAxisX(cellRows.length)) {
+            return -1;
+        }
+        int gap = view.slotAt(geometry, x);
+        if (gap > 0 && x < geometry.getAxisX(gap)) {
+            gap--;
+        }
+        return Math.min(gap, cellRows.length - 1);
+    }
+
+    // Counting sort of the gap's rows by cell
+    private void build(int gap, int rowCount) {
+        int bins = (int) Math.max(MIN_BINS, Math.min(MAX_BINS, Math.sqrt((double) rowCount / ROWS_PER_CELL)));
+        float[] left = view.getSlotValues(gap);
+        float[] right = view.getSlotValues(gap + 1);
+        int[] leftBins = new int[BUCKETS];
+        int[] rightBins = new int[BUCKETS];
+        leftEdges[gap] = binValues(left, rowCount, bins, leftBins);
+        rightEdges[gap] = binValues(right, rowCount, bins, rightBins);
+        int rightBinCount = rightEdges[gap].length - 1;
+
+        int[] starts = new int[(leftEdges[gap].length - 1) * rightBinCount + 1];
+        for (int row = 0; row < rowCount; row++) {
+            starts[leftBins[bucketOf(left[row])] * rightBinCount + rightBins[bucketOf(right[row])] + 1]++;
+        }
+        for (int cell = 0; cell + 1 < starts.length; cell++) {
+            starts[cell + 1] += starts[cell];
+        }
+        int[] next = starts.clone();
+        int[] rows = new int[rowCount];
+        float[] lefts = new float[rowCount];
+        float[] rights = new float[rowCount];
+        for (int row = 0; row < rowCount; row++) {
+            int i = next[leftBins[bucketOf(left[row])] * rightBinCount + rightBins[bucketOf(right[row])]]++;
+            rows[i] = row;
+            lefts[i] = left[row];
+            rights[i] = right[row];
+        }
+        cellStarts[gap] = starts;
+        cellRows[gap] = rows;
+        cellLeft[gap] = lefts;
+        cellRight[gap] = rights;
+    }
+
+    /**
+     * Cut the values' histogram into at most bins bins of about equal row counts, so crowded value ranges get
+     * narrow bins. Fills the bin of each histogram bucket and returns the bin edges, from 0 to 1.
+     */
+    private static float[] binValues(float[] values, int rowCount, int bins, int[] bucketBins) {
+        int[] histogram = new int[BUCKETS];
+        for (int row = 0; row < rowCount; row++) {
+            histogram[bucketOf(values[row])]++;
+        }
+        float[] edges = new float[bins + 1];
+        int bin = 0;
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            bucketBins[bucket] = bin;
+            seen += histogram[bucket];
+            // close the bin once it holds its share, the last bin takes whatever is left
+            if (bin < bins - 1 && bucket < BUCKETS - 1 && seen * bins >= (long) (bin + 1) * rowCount) {
+                bin++;
+                edges[bin] = (float) (bucket + 1) / BUCKETS;
+            }
+        }
+        edges = Arrays.copyOf(edges, bin + 2);
+        edges[bin + 1] = 1;
+        return edges;
+    }
+
+    private static int bucketOf(float normalized) {
+        return Math.max(0, Math.min(BUCKETS - 1, (int) (normalized * BUCKETS)));
+    }
+
+    // First index whose edge is >= value, edges.length when none is
+    private static int firstEdgeAtLeast(float[] edges, float value) {
+        int low = 0;
+        int high = edges.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (edges[mid] < value) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Closest row tested so far
+     */
+    private static class Candidate {
+        private final float target;
+        private final float reach;
+        private final float t;
+        private final long[] selection;
+        private float distance = Float.MAX_VALUE;
+        private int row = -1;
+
+        Candidate(float target, float reach, float t, long[] selection) {
+            this.target = target;
+            this.reach = reach;
+            this.t = t;
+            this.selection = selection;
+        }
+
+        void test(int candidate, float left, float right) {
+            float d = Math.abs(left + t * (right - left) - target);
+            if (d <= reach && (d < distance || (d == distance && candidate > row))
+                    && (selection == null || AxisBrushes.isSelected(selection, candidate))) {
+                distance = d;
+                row = candidate;
+            }
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package javaPC;
+
+/**
+ * Pixel layout of a plot, axis positions and the vertical mapping of normalized values
+ */
+public class PlotGeometry {
+
+    protected static final int AXIS_TOP = 35;
+    private static final int BOTTOM_MARGIN = 30;
+
+    private final int width;
+    private final int height;
+    private final int lineSpacing;
+    private final int[] axisX;
+
+    protected PlotGeometry(int width, int height, int attributeCount) {
+        this.width = width;
+        this.height = height;
+
+        // the class column keeps its slot, so attributes are spread over attributeCount + 1 gaps
+        this.lineSpacing = width / (attributeCount + 1);
+        this.axisX = new int[attributeCount];
+        for (int axis = 0; axis < attributeCount; axis++) {
+            axisX[axis] = lineSpacing * (axis + 1);
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getLineSpacing() {
+        return lineSpacing;
+    }
+
+    public int getAxisCount() {
+        return axisX.length;
+    }
+
+    public int getAxisX(int axis) {
+        return axisX[axis];
+    }
+
+    public int getAxisBottom() {
+        return height - BOTTOM_MARGIN;
+    }
+
+    // Pixel row of a value normalized to [0, 1], 1 sits on the top of the axis
+    public int toY(float normalized) {
+        return getAxisBottom() - Math.round((getAxisBottom() - AXIS_TOP) * normalized);
+    }
+
+    // Normalized value at a pixel row, clamped to the axis
+    public float fromY(int y) {
+        float normalized = (float) (getAxisBottom() - y) / (getAxisBottom() - AXIS_TOP);
+        return Math.max(0, Math.min(1, normalized));
+    }
+}
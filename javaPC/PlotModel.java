@@ -0,0 +1,255 @@
+package javaPC;
+
+import java.util.Arrays;
+import java.util.stream.IntStream;
+
+/**
+ * Plot coordinate model, per axis min/max and every value normalized to [0, 1] once per dataset
+ */
+public class PlotModel {
+
+    private final Dataset data;
+
+    private float[] mins;
+    private float[] maxes;
+    private float[][] normalized;
+    // a dataset read on demand keeps the coordinates in its column cache, normalized only holds them while they are made
+    private final ColumnCache columnCache;
+
+    protected PlotModel(Dataset data) {
+        this.data = data;
+        this.columnCache = data instanceof LazyDataset ? ((LazyDataset) data).getColumnCache() : null;
+        rebuild();
+    }
+
+    // Recompute ranges and coordinates, only needed when the dataset's values change
+    protected void invalidate() {
+        rebuild();
+    }
+
+    /**
+     * Fold rows [from, to) appended to the dataset into the ranges and coordinates. Returns true when an
+     * axis range grew, every coordinate of that column was rescaled then, otherwise only the new rows were scaled.
+     */
+    protected boolean appendRows(int from, int to) {
+        Metrics.Normalize normalize = new Metrics.Normalize();
+        boolean[] rescaled = new boolean[normalized.length];
+        IntStream.range(0, normalized.length).parallel().forEach(col -> rescaled[col] = appendColumn(col, from, to));
+        boolean anyRescaled = false;
+        for (boolean columnRescaled : rescaled) {
+            anyRescaled |= columnRescaled;
+        }
+        normalize.finish(to - from, normalized.length, anyRescaled);
+        return anyRescaled;
+    }
+
+    /**
+     * Rescale rows of a dataset tracking its ranges, a sliding window, whose values were replaced in place.
+     * Returns true when an axis range changed, every coordinate of that column was rescaled then, otherwise
+     * only the given rows were scaled.
+     */
+    protected boolean replaceRows(int[] rows) {
+        Metrics.Normalize normalize = new Metrics.Normalize();
+        boolean[] rescaled = new boolean[normalized.length];
+        IntStream.range(0, normalized.length).parallel().forEach(col -> rescaled[col] = replaceColumn(col, rows));
+        boolean anyRescaled = false;
+        for (boolean columnRescaled : rescaled) {
+            anyRescaled |= columnRescaled;
+        }
+        normalize.finish(rows.length, normalized.length, anyRescaled);
+        return anyRescaled;
+    }
+
+    private boolean replaceColumn(int col, int[] rows) {
+        float[] values = data.getColumn(col);
+        float[] tracked = data.getTrackedRange(col);
+        if (tracked[0] != mins[col] || tracked[1] != maxes[col] || normalized[col].length < data.getRowCount()) {
+            normalizeColumn(col, values);
+            return true;
+        }
+        float[] scaled = normalized[col];
+        float min = mins[col];
+        float range = maxes[col] - min;
+        float scale = range > 0 ? 1.0f / range : 0;
+        for (int row : rows) {
+            scaled[row] = (values[row] - min) * scale;
+        }
+        return false;
+    }
+
+    private boolean appendColumn(int col, int from, int to) {
+        float[] values = data.getColumn(col);
+        // an empty column's 0 to 0 range is a placeholder, the first rows always set it
+        float min = from == 0 ? Float.MAX_VALUE : mins[col];
+        float max = from == 0 ? -Float.MAX_VALUE : maxes[col];
+        // compared as in normalizeColumn, so a NaN cell is skipped instead of making the range NaN
+        for (int row = from; row < to; row++) {
+            float value = values[row];
+            if (value < min) {
+                min = value;
+            }
+            if (value > max) {
+                max = value;
+            }
+        }
+        if (from == 0 || min < mins[col] || max > maxes[col]) {
+            normalizeColumn(col, values);
+            return true;
+        }
+
+        // grow along with the dataset's buffers, not row by row
+        float[] scaled = normalized[col];
+        if (scaled.length < to) {
+            scaled = Arrays.copyOf(scaled, Math.max(to, values.length));
+        }
+        float range = max - min;
+        if (range > 0) {
+            float scale = 1.0f / range;
+            for (int row = from; row < to; row++) {
+                scaled[row] = (values[row] - min) * scale;
+            }
+        }
+        normalized[col] = scaled;
+        return false;
+    }
+
+    private void rebuild() {
+        int axisCount = data.getAttributeCount();
+        mins = new float[axisCount];
+        maxes = new float[axisCount];
+        // a sliding window rebuilds whenever its rows move, its coordinates are rewritten in the same buffers
+        float[][] previous = normalized;
+        normalized = previous != null && data instanceof WindowedDataset ? previous : new float[axisCount][];
+        if (columnCache != null) {
+            // columns are normalized as they are read
+            return;
+        }
+
+        // columns are independent, so large datasets normalize on every core
+        Metrics.Normalize normalize = new Metrics.Normalize();
+        IntStream.range(0, axisCount).parallel().forEach(col -> normalizeColumn(col, data.getColumn(col)));
+        normalize.finish(data.getRowCount(), axisCount, true);
+    }
+
+    private void normalizeColumn(int col, float[] values) {
+        int rowCount = data.getRowCount();
+
+        float min = Float.MAX_VALUE;
+        float max = -Float.MAX_VALUE;
+        float[] tracked = data.getTrackedRange(col);
+        if (tracked != null) {
+            // sliding windows follow their ranges through every eviction, samples and cached files know them already
+            min = tracked[0];
+            max = tracked[1];
+        } else {
+            for (int row = 0; row < rowCount; row++) {
+                float value = values[row];
+                if (value < min) {
+                    min = value;
+                }
+                if (value > max) {
+                    max = value;
+                }
+            }
+        }
+
+        if (rowCount == 0) {
+            min = 0;
+            max = 0;
+        }
+
+        // constant columns sit on the bottom of their axis, a growing dataset's spare capacity is kept
+        float[] scaled = normalized[col];
+        if (scaled == null || scaled.length < Math.max(rowCount, values.length)) {
+            scaled = new float[Math.max(rowCount, values.length)];
+        }
+        float range = max - min;
+        if (range > 0) {
+            float scale = 1.0f / range;
+            for (int row = 0; row < rowCount; row++) {
+                scaled[row] = (values[row] - min) * scale;
+            }
+        } else {
+            Arrays.fill(scaled, 0, rowCount, 0);
+        }
+
+        mins[col] = min;
+        maxes[col] = max;
+        normalized[col] = scaled;
+    }
+
+    public Dataset getDataset() {
+        return data;
+    }
+
+    public int getAxisCount() {
+        return normalized.length;
+    }
+
+    // A dataset read on demand remembers the range of each column it parsed, reading one if needed
+    public float getMin(int col) {
+        return columnCache != null ? data.getTrackedRange(col)[0] : mins[col];
+    }
+
+    public float getMax(int col) {
+        return columnCache != null ? data.getTrackedRange(col)[1] : maxes[col];
+    }
+
+    public float[] getNormalized(int col) {
+        return columnCache != null ? getNormalized(new int[] {col})[0] : normalized[col];
+    }
+
+    /**
+     * Several columns at once. For a dataset read on demand the ones not in its cache are parsed in one pass
+     * and normalized, and all are returned even when the cache cannot keep them.
+     */
+    protected float[][] getNormalized(int[] cols) {
+        if (columnCache != null) {
+            return loadNormalized(cols);
+        }
+        float[][] selected = new float[cols.length][];
+        for (int i = 0; i < cols.length; i++) {
+            selected[i] = normalized[cols[i]];
+        }
+        return selected;
+    }
+
+    private synchronized float[][] loadNormalized(int[] cols) {
+        float[][] selected = new float[cols.length][];
+        int[] missing = new int[cols.length];
+        int missingCount = 0;
+        for (int i = 0; i < cols.length; i++) {
+            selected[i] = columnCache.get(cols[i], ColumnCache.NORMALIZED);
+            if (selected[i] == null) {
+                missing[missingCount++] = cols[i];
+            }
+        }
+        if (missingCount == 0) {
+            return selected;
+        }
+        Metrics.Normalize normalize = new Metrics.Normalize();
+        int[] read = Arrays.copyOf(missing, missingCount);
+        float[][] values = data.getColumns(read);
+        IntStream.range(0, read.length).parallel().forEach(i -> normalizeColumn(read[i], values[i]));
+        for (int i = 0, next = 0; i < cols.length; i++) {
+            if (selected[i] == null) {
+                selected[i] = normalized[read[next++]];
+                columnCache.put(cols[i], ColumnCache.NORMALIZED, selected[i]);
+            }
+        }
+        for (int col : read) {
+            normalized[col] = null;
+        }
+        normalize.finish(data.getRowCount(), read.length, true);
+        return selected;
+    }
+
+    // Columns worth reading in one pass: as many as the column cache holds along with their coordinates
+    protected int getColumnsPerBatch() {
+        if (columnCache == null) {
+            return Integer.MAX_VALUE;
+        }
+        long columnBytes = 2L * Float.BYTES * Math.max(1, data.getRowCount());
+        return (int) Math.max(1, Math.min(Integer.MAX_VALUE, columnCache.getBudget() / columnBytes));
+    }
+}
@@ -1,21 +1,39 @@
 package javaPC;
 
-import javax.swing.JFrame;
-import javax.swing.JLabel;
+import javax.swing.AbstractAction;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
-import javax.swing.SwingUtilities;
+import javax.swing.KeyStroke;
+import javax.swing.Timer;
+import javax.swing.ToolTipManager;
+import javax.swing.UIManager;
 import javax.swing.border.BevelBorder;
 
+import java.awt.BasicStroke;
 import java.awt.Color;
+import java.awt.Cursor;
 import java.awt.Dimension;
+import java.awt.Font;
 import java.awt.Graphics;
-import java.awt.Point;
+import java.awt.Graphics2D;
+import java.awt.Stroke;
+import java.awt.Toolkit;
+import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.event.MouseWheelEvent;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.awt.image.BufferedImage;
 import java.text.DecimalFormat;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * Plot renderer class
@@ -25,31 +43,156 @@ public class PlotPanel extends JPanel {
 
     private static final int WIDTH = 1600;
     private static final int HEIGHT = 750;
+    private static final int VERTEX_SIZE = 7;
+    // fewest attributes a zoom can narrow down to
+    private static final int MIN_VISIBLE_AXES = 2;
+    // width of the summary band drawn in place of an axis when attributes are aggregated
+    private static final int BAND_WIDTH = 5;
+    // how often rows waiting in an attached stream are taken into the plot
+    private static final int STREAM_DRAIN_MS = 100;
+    // plots with fewer segments than this render synchronously, larger ones progressively in the background
+    private static final int PROGRESSIVE_MIN_SEGMENTS = 50_000;
+    // how close to an axis a drag starts a brush, the width a brush is drawn and the drag that counts as one
+    private static final int BRUSH_GRAB = 6;
+    private static final int BRUSH_WIDTH = 12;
+    private static final int BRUSH_MIN_DRAG = 3;
+    // opacity of rows outside the brushes relative to selected ones
+    private static final float UNSELECTED_ALPHA = 0.15f;
+    // rows split by selection at a time when brushes are drawn
+    private static final int SELECTION_CHUNK = 1 << 16;
+    // how far from a line the cursor may be to pick it, and how many values a tooltip lists
+    private static final int PICK_TOLERANCE = 3;
+    private static final int TOOLTIP_MAX_VALUES = 16;
+    // attributes shown when a dataset read on demand is opened
+    private static final int LAZY_INITIAL_AXES = 20;
 
     private HashMap<String, Color> colorMap;
 
-    private String[][] data;
+    private Dataset data;
+    private PlotModel model;
+    private Color[] classColors;
+    private int[] classCounts;
     private boolean showAxisNames = true;
-    private static Color backgroundColor = Color.GRAY;
-    private static Color axisColor = Color.BLACK;
-    private static Boolean scaleVertices = false;
+    private float alpha = 1.0f;
+    // per panel, so panels drawn at once on several threads each keep their own look
+    private Color backgroundColor = Color.GRAY;
+    private Color axisColor = Color.BLACK;
+    private AxisHistogram.Style histogramStyle = AxisHistogram.Style.OFF;
+    private int histogramBins = AxisHistogram.DEFAULT_BINS;
+    private RenderMode renderMode = RenderMode.JAVA2D;
+    private RenderQuality renderQuality = RenderQuality.SPEED;
+    // -DjavaPC.hud=true starts with the metrics overlay shown, F3 toggles it
+    private boolean showHud = Boolean.getBoolean("javaPC.hud");
 
-    HashMap<Point, Integer> pointOverlays = new HashMap<>();
+    // display order of the attributes and the zoomed range of it that is visible
+    private int[] axisOrder;
+    private int zoomFirst;
+    private int zoomCount;
 
-    public void toggleScaleVertices() {
-        scaleVertices = !scaleVertices;
-        removeAll();
-        repaint();
+    private AxisView view;
+    private PlotGeometry geometry;
+    private BufferedImage plotLayer;
+    // true once the layer is up to date or a progressive render for the current state is under way
+    private boolean plotLayerValid;
+    // rows changed under a progressive render that was left to finish, it is followed by one more render
+    private boolean plotLayerStale;
+    private boolean progressiveRendering = true;
+    private final ProgressiveRenderer renderer = new ProgressiveRenderer(this::renderFailed);
+    // the last render threw, a failing render is only started again by the next change to the plot
+    private boolean renderFailed;
+    // painter behind the current layer and the rows it has been asked to draw, appended rows are drawn with it
+    private ProgressiveRenderer.LayerPainter layerPainter;
+    private int layerRowCount;
+    // strips of finished layers by the attributes they were drawn from, taken back when the axes are reordered
+    private StripCache stripCache;
+    // clusters the bundle mode draws, kept across renders and brushes while the coordinates hold
+    private RowClusters rowClusters;
+
+    // every row of a file too large for the heap, drawn by density modes while data holds its overview
+    private ChunkStore chunkStore;
+    // numbers the renders streaming from it, a render stops at its next group of chunks once a newer one starts
+    private final AtomicInteger chunkRenders = new AtomicInteger();
+
+    private RowStream stream;
+    private Timer streamTimer;
+
+    private AxisHistogram histogram;
+    private AxisLabels axisLabels;
+
+    private final AxisBrushes brushes;
+    // attribute being brushed by the mouse and the pixel row the drag started on, -1 while not brushing
+    private int brushAttribute = -1;
+    private int brushStartY;
+    // slot whose axis is being dragged to a new position by its label, -1 while not reordering
+    private int draggedSlot = -1;
+
+    // segments of the current view bucketed for picking, and the row picked by a click or -1
+    private PickIndex pickIndex;
+    private int pickedRow = -1;
+
+    // Step through off, scaled vertices and bars, returning the style now shown
+    public AxisHistogram.Style cycleHistogramStyle() {
+        AxisHistogram.Style[] styles = AxisHistogram.Style.values();
+        histogramStyle = styles[(histogramStyle.ordinal() + 1) % styles.length];
+        invalidatePlotLayer();
+        return histogramStyle;
+    }
+
+    public void setHistogramStyle(AxisHistogram.Style style) {
+        histogramStyle = style;
+        invalidatePlotLayer();
+    }
+
+    public void setHistogramBins(int bins) {
+        if (bins != histogramBins) {
+            histogramBins = bins;
+            histogram = null;
+            invalidatePlotLayer();
+        }
+    }
+
+    // Binned counts are built on first use and kept until the data or bin count changes
+    private AxisHistogram getHistogram() {
+        if (histogram == null) {
+            histogram = new AxisHistogram(model, histogramBins);
+        }
+        // attributes read on demand are counted as they come into view
+        histogram.countAxes(getView());
+        return histogram;
+    }
+
+    private AxisHistogram getVertexScale() {
+        return histogramStyle == AxisHistogram.Style.VERTICES ? getHistogram() : null;
+    }
+
+    public void setRenderMode(RenderMode mode) {
+        renderMode = mode;
+        invalidatePlotLayer();
+    }
+
+    public RenderMode getRenderMode() {
+        return renderMode;
+    }
+
+    // Rendering hints the Java2D engine draws with, speed for interactive frames and quality for exports
+    public void setRenderQuality(RenderQuality quality) {
+        renderQuality = quality;
+        invalidatePlotLayer();
+    }
+
+    public RenderQuality getRenderQuality() {
+        return renderQuality;
     }
 
     public void setAlpha(float alpha) {
+        this.alpha = alpha;
         // set all class color alphas
         for (String className : colorMap.keySet()) {
             Color color = colorMap.get(className);
             colorMap.put(className, new Color(color.getRed(), color.getGreen(), color.getBlue(), Math.round(alpha * 255)));
         }
-        removeAll();
-        repaint();
+        updateClassColors();
+        invalidatePlotLayer();
     }
 
     public HashMap<String, Color> generateUniqueColors(List<String> classNames, Color axisColor, Color backgroundColor) {
@@ -74,229 +217,1081 @@ public class PlotPanel extends JPanel {
         return colorMap;
     }
 
+    /**
+     * Take the look of the panel that showed the previous dataset, so opening another file keeps the colors,
+     * histogram, engine and overlay the ribbon shows. Class colors are picked again around the new background.
+     */
+    protected void copyLook(PlotPanel previous) {
+        backgroundColor = previous.backgroundColor;
+        axisColor = previous.axisColor;
+        histogramStyle = previous.histogramStyle;
+        histogramBins = previous.histogramBins;
+        renderMode = previous.renderMode;
+        renderQuality = previous.renderQuality;
+        showHud = previous.showHud;
+        setBackground(backgroundColor);
+        colorMap = generateUniqueColors(data.getClassNames(), axisColor, backgroundColor);
+        updateClassColors();
+        histogram = null;
+        invalidatePlotLayer();
+    }
+
     public void setAxisColor(Color color) {
         axisColor = color;
-        removeAll();
         repaint();
     }
 
     public void setClassColor(String className, Color color) {
         if (colorMap.containsKey(className)) {
             colorMap.put(className, color);
+            updateClassColors();
         } else {
             JOptionPane.showMessageDialog(this, "Class name not found: " + className);
         }
-        removeAll();
-        repaint();
+        invalidatePlotLayer();
     }    
 
+    // Index class colors by class id so painting avoids a name lookup per row
+    private void updateClassColors() {
+        classColors = new Color[data.getClassCount()];
+        for (int classId = 0; classId < classColors.length; classId++) {
+            classColors[classId] = colorMap.get(data.getClassName(classId));
+        }
+    }
+
+    // Rebuild the normalized coordinates after the dataset's values have changed
+    protected void dataChanged() {
+        model.invalidate();
+        rowClusters = null;
+        histogram = null;
+        view = null;
+        geometry = null;
+        axisLabels = null;
+        classCounts = data.countClasses();
+        brushes.dataReplaced();
+        setPickedRow(-1);
+        invalidatePlotLayer();
+    }
+
     public void setBackgroundColor(Color color) {
         setBackground(color);
         backgroundColor = color;
-        removeAll();
         repaint();
     }
 
     public void setShowAxisNames(boolean showAxisNames) {
         this.showAxisNames = showAxisNames;
-        removeAll();
         repaint();
     }
 
-    protected PlotPanel(String[][] data) {
+    protected PlotPanel(Dataset data) {
         this.data = data;
+        this.model = new PlotModel(data);
+        this.classCounts = data.countClasses();
+        this.brushes = new AxisBrushes(data);
+
+        axisOrder = new int[data.getAttributeCount()];
+        for (int i = 0; i < axisOrder.length; i++) {
+            axisOrder[i] = i;
+        }
+        zoomFirst = 0;
+        // a file read on demand opens on its first attributes, only their columns are parsed until it is zoomed out
+        zoomCount = data instanceof LazyDataset ? Math.min(axisOrder.length, LAZY_INITIAL_AXES) : axisOrder.length;
 
         // Set the preferred size of the panel
         setPreferredSize(new Dimension(WIDTH, HEIGHT));
 
         setBorder(new BevelBorder(BevelBorder.LOWERED, Color.BLACK, Color.BLACK));
         
-        ArrayList<String> classNames = new ArrayList<>();
-        for (int j = 1; j < data.length; j++) {
-            for (int i = 0; i < data[0].length; i++) {
-                if (i == data[0].length - 1) {
-                    String name = data[j][i];
-                    if (!classNames.contains(name)) {
-                        classNames.add(name);
-                    }
-                    continue;
+        colorMap = generateUniqueColors(data.getClassNames(), axisColor, backgroundColor);
+        updateClassColors();
+        
+        setBackground(backgroundColor);
+
+        // F3 shows or hides the metrics overlay wherever the focus is in the window
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_F3, 0), "toggleHud");
+        getActionMap().put("toggleHud", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                setShowHud(!showHud);
+            }
+        });
+
+        // wheel zooms into the attributes around the cursor, shift + wheel pans, double click shows all
+        MouseAdapter zoomHandler = new MouseAdapter() {
+            @Override
+            public void mouseWheelMoved(MouseWheelEvent e) {
+                if (e.isShiftDown()) {
+                    panAxes(e.getWheelRotation() * Math.max(1, zoomCount / 10));
+                } else {
+                    zoomAxes(e.getX(), e.getWheelRotation() < 0);
                 }
             }
-        }       
 
-        colorMap = generateUniqueColors(classNames, axisColor, backgroundColor);
-        
-        setBackground(backgroundColor);
+            @Override
+            public void mouseClicked(MouseEvent e) {
+                if (e.getClickCount() == 2) {
+                    setVisibleRange(0, axisOrder.length);
+                } else if (brushableAttributeAt(e.getX(), e.getY()) < 0) {
+                    // a click on a line picks it, a click on empty space clears the pick
+                    setPickedRow(pickRow(e.getX(), e.getY()));
+                }
+            }
+        };
+        addMouseWheelListener(zoomHandler);
+        addMouseListener(zoomHandler);
+
+        // dragging along an axis brushes a value range, clicking an axis removes its brush
+        MouseAdapter brushHandler = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                brushAttribute = brushableAttributeAt(e.getX(), e.getY());
+                brushStartY = e.getY();
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (brushAttribute >= 0 && Math.abs(e.getY() - brushStartY) >= BRUSH_MIN_DRAG) {
+                    PlotGeometry geometry = getGeometry();
+                    setBrush(brushAttribute, toValue(brushAttribute, geometry.fromY(brushStartY)), toValue(brushAttribute, geometry.fromY(e.getY())));
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (brushAttribute >= 0 && Math.abs(e.getY() - brushStartY) < BRUSH_MIN_DRAG) {
+                    removeBrush(brushAttribute);
+                }
+                brushAttribute = -1;
+            }
+        };
+        addMouseListener(brushHandler);
+        addMouseMotionListener(brushHandler);
+
+        // dragging an axis by its label moves it, every position it passes is drawn on the way
+        MouseAdapter reorderHandler = new MouseAdapter() {
+            @Override
+            public void mousePressed(MouseEvent e) {
+                draggedSlot = reorderableSlotAt(e.getX(), e.getY());
+                if (draggedSlot >= 0) {
+                    setCursor(Cursor.getPredefinedCursor(Cursor.MOVE_CURSOR));
+                }
+            }
+
+            @Override
+            public void mouseDragged(MouseEvent e) {
+                if (draggedSlot < 0) {
+                    return;
+                }
+                AxisView view = getView();
+                int target = view.slotAt(getGeometry(), e.getX());
+                if (target != draggedSlot) {
+                    moveAxis(view.positionOf(draggedSlot), view.positionOf(target));
+                    draggedSlot = target;
+                }
+            }
+
+            @Override
+            public void mouseReleased(MouseEvent e) {
+                if (draggedSlot >= 0) {
+                    setCursor(Cursor.getDefaultCursor());
+                }
+                draggedSlot = -1;
+            }
+        };
+        addMouseListener(reorderHandler);
+        addMouseMotionListener(reorderHandler);
+
+        // tooltips come from getToolTipText(MouseEvent), which picks the line under the cursor
+        ToolTipManager.sharedInstance().registerComponent(this);
 
         setVisible(true);
     }
 
+    /**
+     * Show count attributes starting at position first of the display order, clamped to the dataset
+     */
+    public void setVisibleRange(int first, int count) {
+        int attributeCount = axisOrder.length;
+        count = Math.max(Math.min(MIN_VISIBLE_AXES, attributeCount), Math.min(attributeCount, count));
+        first = Math.max(0, Math.min(attributeCount - count, first));
+        if (first == zoomFirst && count == zoomCount) {
+            return;
+        }
+        zoomFirst = first;
+        zoomCount = count;
+        view = null;
+        geometry = null;
+        axisLabels = null;
+        invalidatePlotLayer();
+    }
+
+    public int[] getAxisOrder() {
+        return axisOrder.clone();
+    }
+
+    /**
+     * Show the attributes in a new display order, a permutation of the attribute indexes. Strips between axes
+     * that keep their neighbours are copied from the plot already drawn and only the others are drawn again.
+     */
+    public void setAxisOrder(int[] order) {
+        boolean[] listed = new boolean[axisOrder.length];
+        for (int col : order) {
+            if (order.length != axisOrder.length || col < 0 || col >= listed.length || listed[col]) {
+                throw new IllegalArgumentException("Axis order must list each of the " + axisOrder.length + " attributes once");
+            }
+            listed[col] = true;
+        }
+        if (Arrays.equals(order, axisOrder)) {
+            return;
+        }
+        cacheStrips();
+        int[] oldOrder = axisOrder;
+        axisOrder = order.clone();
+        view = null;
+        geometry = null;
+        axisLabels = null;
+        redrawFromStrips();
+        firePropertyChange("axisOrder", oldOrder, getAxisOrder());
+    }
+
+    /**
+     * Display order putting strongly correlated attributes side by side, which untangles the lines between
+     * them. Reads every row, so callers with large datasets run it off the event thread and pass the result
+     * to setAxisOrder. A dataset read on demand is read in batches of columns its cache can hold.
+     */
+    public int[] findCorrelatedAxisOrder() {
+        return AxisOrdering.order(AxisOrdering.correlations(data, model.getColumnsPerBatch()));
+    }
+
+    // Move the attribute at display position from to position to, the ones between shift over by one
+    public void moveAxis(int from, int to) {
+        int[] order = axisOrder.clone();
+        int moved = order[from];
+        if (from < to) {
+            System.arraycopy(order, from + 1, order, from, to - from);
+        } else {
+            System.arraycopy(order, to, order, to + 1, from - to);
+        }
+        order[to] = moved;
+        setAxisOrder(order);
+    }
+
+    public int getVisibleFirst() {
+        return zoomFirst;
+    }
+
+    public int getVisibleCount() {
+        return zoomCount;
+    }
+
+    // Halve or double the visible range, keeping the attribute under x at the same relative spot
+    private void zoomAxes(int x, boolean zoomIn) {
+        AxisView current = getView();
+        int anchor = current.positionOf(current.slotAt(getGeometry(), x));
+        int count = zoomIn ? zoomCount / 2 : zoomCount * 2;
+        double fraction = (anchor - zoomFirst) / (double) zoomCount;
+        setVisibleRange(anchor - (int) Math.round(fraction * count), count);
+    }
+
+    private void panAxes(int positions) {
+        setVisibleRange(zoomFirst + positions, zoomCount);
+    }
+
+    // Mark the cached polylines stale, needed when data, class colors, alpha, vertex sizes or size change
+    protected void invalidatePlotLayer() {
+        renderer.cancel();
+        plotLayerValid = false;
+        plotLayerStale = false;
+        stripCache = null;
+        repaint();
+    }
+
+    // Like invalidatePlotLayer for streamed rows, but a progressive render under way finishes first, so a feed
+    // faster than a render still completes frames. It may draw some rows already changed, the next render fixes them
+    private void redrawPlotLayer() {
+        if (renderer.isRendering()) {
+            plotLayerStale = true;
+            stripCache = null;
+            repaint();
+        } else {
+            invalidatePlotLayer();
+        }
+    }
+
+    // Turned off for exports, where a frame has to be complete when paint returns
+    public void setProgressiveRendering(boolean progressiveRendering) {
+        this.progressiveRendering = progressiveRendering;
+        invalidatePlotLayer();
+    }
+
+    /**
+     * Draw density modes from every row of the store rather than the dataset's rows, streaming its chunks into
+     * the accumulation. The dataset should be the store's overview, which still provides the axes, labels,
+     * picking and the other modes, and previews the density while the chunks stream. Null stops using a store.
+     */
+    public void setChunkStore(ChunkStore store) {
+        chunkStore = store;
+        invalidatePlotLayer();
+    }
+
+    // Shown panels get their brush index sorted ahead of the first drag, a sliding window changes too often for it
+    // and a dataset read on demand would have to parse every column
     @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
+    public void addNotify() {
+        super.addNotify();
+        if (!(data instanceof WindowedDataset) && !(data instanceof LazyDataset)) {
+            brushes.sortInBackground();
+        }
+    }
 
-        int panelWidth = getWidth();
-        int panelHeight = getHeight() + 40;
-        int margin = 70;
+    // A panel replaced by a newly loaded dataset stops its render and its stream instead of finishing them unseen
+    @Override
+    public void removeNotify() {
+        renderer.cancel();
+        detachStream();
+        super.removeNotify();
+    }
 
-        int axisCount = data[0].length;
-        int lineSpacing = panelWidth / axisCount;
+    /**
+     * Feed rows arriving on the stream into this panel's dataset, the stream's header must match it.
+     * Rows are taken in on the EDT every STREAM_DRAIN_MS and the stream is closed with the panel.
+     */
+    protected void attachStream(RowStream rowStream) {
+        detachStream();
+        stream = rowStream;
+        streamTimer = new Timer(STREAM_DRAIN_MS, e -> {
+            int from = data.getRowCount();
+            int added = rowStream.drainInto(data);
+            // a sliding window also drops rows on ticks without new ones, once its time limit passes
+            if (data instanceof WindowedDataset && ((WindowedDataset) data).takeEvictedRows() > 0) {
+                windowMoved(added);
+            } else if (added > 0) {
+                rowsAppended(from);
+            }
+        });
+        streamTimer.start();
+    }
 
-        g.setColor(Color.BLACK);
+    /**
+     * Stop taking rows from a stream whose source failed, keeping the rows it delivered on screen.
+     * Returns false when the panel is not showing that stream.
+     */
+    protected boolean endStream(RowStream rowStream) {
+        if (stream != rowStream) {
+            return false;
+        }
+        streamTimer.stop();
+        streamTimer = null;
+        stream = null;
+        return true;
+    }
 
-        float[] maxes = new float[axisCount - 1]; // init to all 0s
-        float[] mins = new float[axisCount - 1]; // init to all max values
-        Arrays.fill(mins, Float.MAX_VALUE);
-
-        pointOverlays.clear();
-
-        for (int j = 1; j < data.length; j++) {
-            for (int i = 0; i < axisCount - 1; i++) {
-                float dataPnt = 0;
-                try {
-                    dataPnt = Float.parseFloat(data[j][i]);
-                } catch (NumberFormatException e) {
-                    SwingUtilities.invokeLater(() -> {
-                        JFrame parentFrame = (JFrame) SwingUtilities.getWindowAncestor(this);
-                        JOptionPane.showMessageDialog(parentFrame, "Dataset contains non-numeric values or class column is not last column.");
-                        parentFrame.setTitle(TopWindow.TITLE);
-                    });
-                    return;
+    private void detachStream() {
+        if (streamTimer != null) {
+            streamTimer.stop();
+            streamTimer = null;
+        }
+        if (stream != null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            stream = null;
+        }
+    }
+
+    /**
+     * Take in the rows appended to the dataset from row from on. While every axis range still holds,
+     * only the new polylines are drawn onto the cached layer; a grown range, a new class or vertices
+     * sized by the histogram need the whole plot drawn again.
+     */
+    protected void rowsAppended(int from) {
+        int to = data.getRowCount();
+        if (to <= from) {
+            return;
+        }
+        int[] oldClassCounts = classCounts;
+        boolean newClasses = data.getClassCount() > classColors.length;
+        if (newClasses) {
+            addClassColors();
+        }
+        // the dataset follows its counts as rows are added
+        classCounts = data.countClasses();
+
+        boolean rescaled = model.appendRows(from, to);
+        brushes.rowsAppended(from, to);
+        if (rescaled || newClasses || histogramStyle == AxisHistogram.Style.VERTICES) {
+            // rescaled coordinates move rows between clusters and new classes have none yet
+            if (rescaled || newClasses) {
+                rowClusters = null;
+            }
+            histogram = null;
+            view = null;
+            geometry = null;
+            axisLabels = null;
+            redrawPlotLayer();
+        } else {
+            if (view != null) {
+                view.appendRows(from, to);
+            }
+            // cached strips lack the new rows
+            stripCache = null;
+            if (histogram != null) {
+                histogram.addRows(model, from, to);
+            }
+            // a progressive render still under way draws these once its last batch is done
+            if (plotLayerValid && layerPainter != null && !renderer.isRendering()) {
+                drawAppendedRows(plotLayer);
+            }
+            repaint();
+        }
+        firePropertyChange("classCounts", oldClassCounts, classCounts);
+    }
+
+    /**
+     * Take in a sliding window that dropped rows while the newest added ones arrived. Rows that took over evicted
+     * slots are scaled, matched against the brushes and given clusters on their own, columns are only rescaled
+     * when their tracked range changed. Rows moved back to the start of the buffers rebuild the coordinates, but
+     * match the brushes by a scan instead of sorting. Either way the plot is drawn again once any render under
+     * way is done, rather than restarted on every tick.
+     */
+    protected void windowMoved(int added) {
+        WindowedDataset window = (WindowedDataset) data;
+        int[] oldClassCounts = classCounts;
+        boolean newClasses = data.getClassCount() > classColors.length;
+        if (newClasses) {
+            addClassColors();
+        }
+        classCounts = data.countClasses();
+        histogram = null;
+        pickIndex = null;
+
+        if (window.takeRowsMoved()) {
+            model.invalidate();
+            rowClusters = null;
+            view = null;
+            geometry = null;
+            axisLabels = null;
+            brushes.rowsReplaced(null);
+            setPickedRow(-1);
+        } else {
+            int rowCount = data.getRowCount();
+            int[] rows = new int[Math.min(added, rowCount)];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = window.getArrivalSlot(rowCount - rows.length + i);
+                if (rows[i] == pickedRow) {
+                    setPickedRow(-1);
                 }
-                if (dataPnt > maxes[i]) {
-                    maxes[i] = dataPnt;
+            }
+            boolean rescaled = model.replaceRows(rows);
+            brushes.rowsReplaced(rows);
+            if (rescaled || newClasses) {
+                rowClusters = null;
+            } else if (rowClusters != null) {
+                rowClusters.rowsReplaced(rows);
+            }
+            // single attribute slots share the model's arrays, bands average them and labels show the ranges
+            if (rescaled || (view != null && view.isAggregated())) {
+                view = null;
+                geometry = null;
+                axisLabels = null;
+            }
+        }
+        redrawPlotLayer();
+        firePropertyChange("classCounts", oldClassCounts, classCounts);
+    }
+
+    private void drawAppendedRows(BufferedImage layer) {
+        int rowCount = data.getRowCount();
+        if (layerRowCount < rowCount) {
+            layerPainter.draw(layer, null, layerRowCount, rowCount);
+            layerPainter.finish(layer);
+            layerRowCount = rowCount;
+        }
+    }
+
+    // Colors for classes first seen in appended rows, classes already drawn keep theirs
+    private void addClassColors() {
+        HashMap<String, Color> previous = colorMap;
+        generateUniqueColors(data.getClassNames(), axisColor, backgroundColor);
+        for (String className : colorMap.keySet()) {
+            Color color = colorMap.get(className);
+            colorMap.put(className, new Color(color.getRed(), color.getGreen(), color.getBlue(), Math.round(alpha * 255)));
+        }
+        colorMap.putAll(previous);
+        updateClassColors();
+    }
+
+    /**
+     * Select rows whose attribute col lies between min and max, in the dataset's units. Brushes on several
+     * attributes must all hold, rows outside them are drawn faintly beneath the selected ones.
+     */
+    public void setBrush(int col, float min, float max) {
+        brushes.setRange(col, min, max);
+        invalidatePlotLayer();
+    }
+
+    public void removeBrush(int col) {
+        if (brushes.getRange(col) != null) {
+            brushes.removeRange(col);
+            invalidatePlotLayer();
+        }
+    }
+
+    public void clearBrushes() {
+        if (!brushes.isEmpty()) {
+            brushes.clear();
+            invalidatePlotLayer();
+        }
+    }
+
+    // Rows inside every brush, all rows while nothing is brushed
+    public int getSelectedCount() {
+        return brushes.isEmpty() ? data.getRowCount() : brushes.getSelectedCount();
+    }
+
+    /**
+     * Row whose line passes within PICK_TOLERANCE pixels of the point, or -1. While rows are brushed
+     * only selected rows can be picked.
+     */
+    public int pickRow(int x, int y) {
+        if (pickIndex == null || pickIndex.getView() != getView()) {
+            pickIndex = new PickIndex(getView());
+        }
+        return pickIndex.pick(getGeometry(), x, y, PICK_TOLERANCE, brushes.getSelection());
+    }
+
+    public int getPickedRow() {
+        return pickedRow;
+    }
+
+    // Highlight one row above the plot, -1 removes the highlight
+    public void setPickedRow(int row) {
+        if (row != pickedRow) {
+            int oldRow = pickedRow;
+            pickedRow = row;
+            repaint();
+            firePropertyChange("pickedRow", oldRow, row);
+        }
+    }
+
+    // The class and values of the line under the cursor
+    @Override
+    public String getToolTipText(MouseEvent e) {
+        int row = pickRow(e.getX(), e.getY());
+        if (row < 0) {
+            return null;
+        }
+        AxisView view = getView();
+        DecimalFormat formatter = new DecimalFormat("0.####");
+        StringBuilder text = new StringBuilder("<html><b>Case " + (row + 1) + ": " + data.getClassName(data.getClassId(row)) + "</b>");
+        int shown = Math.min(TOOLTIP_MAX_VALUES, view.getSlotCount());
+        for (int slot = 0; slot < shown; slot++) {
+            int col = view.getAttribute(slot);
+            if (view.isBand(slot)) {
+                // a band shows the mean of its members' values, its line is drawn at the mean of their normalized ones
+                int[] members = view.getAttributes(slot);
+                float mean = 0;
+                for (int member : members) {
+                    mean += data.getValue(row, member);
                 }
-                if (dataPnt < mins[i]) {
-                    mins[i] = dataPnt;
+                text.append("<br>").append(AxisLabels.bandName(data, members))
+                        .append(" mean: ").append(formatter.format(mean / members.length));
+            } else {
+                text.append("<br>").append(data.getAttributeName(col)).append(": ").append(formatter.format(data.getValue(row, col)));
+            }
+        }
+        if (shown < view.getSlotCount()) {
+            text.append("<br>...");
+        }
+        return text.append("</html>").toString();
+    }
+
+    // Attribute of the axis under a press, bands and presses away from an axis give -1
+    private int brushableAttributeAt(int x, int y) {
+        PlotGeometry geometry = getGeometry();
+        AxisView view = getView();
+        if (geometry.getAxisCount() == 0 || y < PlotGeometry.AXIS_TOP - BRUSH_GRAB || y > geometry.getAxisBottom() + BRUSH_GRAB) {
+            return -1;
+        }
+        int slot = view.slotAt(geometry, x);
+        if (view.isBand(slot) || Math.abs(x - geometry.getAxisX(slot)) > BRUSH_GRAB) {
+            return -1;
+        }
+        return view.getAttribute(slot);
+    }
+
+    private float toValue(int col, float normalized) {
+        return model.getMin(col) + normalized * (model.getMax(col) - model.getMin(col));
+    }
+
+    private float toNormalized(int col, float value) {
+        float range = model.getMax(col) - model.getMin(col);
+        return range > 0 ? Math.max(0, Math.min(1, (value - model.getMin(col)) / range)) : 0;
+    }
+
+    // Slot whose label is under a press, bands and presses away from the labels give -1
+    private int reorderableSlotAt(int x, int y) {
+        PlotGeometry geometry = getGeometry();
+        AxisView view = getView();
+        if (geometry.getAxisCount() < 2 || y >= PlotGeometry.AXIS_TOP - BRUSH_GRAB) {
+            return -1;
+        }
+        int slot = view.slotAt(geometry, x);
+        return view.isBand(slot) || Math.abs(x - geometry.getAxisX(slot)) > geometry.getLineSpacing() / 2 ? -1 : slot;
+    }
+
+    // Density is normalized and bundles are drawn over the whole canvas, so only the line engines have strips that stand alone
+    private boolean canCacheStrips() {
+        return !renderMode.isDensity() && !renderMode.isAggregate() && StripCache.supports(getView());
+    }
+
+    // Keep the strips of a finished layer, so a reorder can take back the ones whose axes keep their neighbours
+    private void cacheStrips() {
+        if (plotLayer == null || !plotLayerValid || renderer.isRendering() || layerRowCount != data.getRowCount() || !canCacheStrips()) {
+            return;
+        }
+        PlotGeometry geometry = getGeometry();
+        if (plotLayer.getWidth() != geometry.getWidth() || plotLayer.getHeight() != geometry.getHeight()) {
+            return;
+        }
+        if (stripCache == null || !stripCache.fits(geometry)) {
+            stripCache = new StripCache(geometry);
+        }
+        stripCache.store(plotLayer, geometry, getView());
+    }
+
+    // Lay the cached strips of the current order into a new layer and draw only the strips that were not cached
+    private void redrawFromStrips() {
+        PlotGeometry geometry = getGeometry();
+        if (stripCache == null || !stripCache.fits(geometry) || !canCacheStrips()) {
+            invalidatePlotLayer();
+            return;
+        }
+        renderer.cancel();
+        BufferedImage layer = ProgressiveRenderer.createLayer(geometry.getWidth(), geometry.getHeight());
+        boolean[] missing = stripCache.restore(layer, geometry, getView());
+        plotLayer = layer;
+        plotLayerValid = true;
+        layerPainter = createLayerPainter(null);
+        layerRowCount = data.getRowCount();
+        if (missing != null) {
+            int missingCount = 0;
+            for (boolean strip : missing) {
+                missingCount += strip ? 1 : 0;
+            }
+            ProgressiveRenderer.LayerPainter stripPainter = createLayerPainter(missing);
+            if (progressiveRendering && (long) layerRowCount * missingCount >= PROGRESSIVE_MIN_SEGMENTS) {
+                // the cached strips show right away, the missing ones fill in
+                renderer.start(layer, layerRowCount, stripPainter, (frame, complete) -> {
+                    plotLayer = frame;
+                    if (complete) {
+                        renderFailed = false;
+                        drawAppendedRows(frame);
+                        if (plotLayerStale) {
+                            invalidatePlotLayer();
+                        }
+                    }
+                    repaint();
+                });
+            } else {
+                stripPainter.draw(layer, null, 0, layerRowCount);
+                stripPainter.finish(layer);
+            }
+        }
+        repaint();
+    }
+
+    // Clusters are fitted on first use by a render, on its worker thread when it runs in the background
+    private RowClusters getRowClusters() {
+        int[] attributes = getClusterAttributes();
+        if (rowClusters == null || !Arrays.equals(rowClusters.getAttributes(), attributes)) {
+            rowClusters = new RowClusters(model, attributes);
+        }
+        return rowClusters;
+    }
+
+    // Every attribute, but a dataset read on demand only compares rows on the visible ones, which the view
+    // holds anyway, instead of parsing every column past the cache budget
+    private int[] getClusterAttributes() {
+        if (!(data instanceof LazyDataset)) {
+            return IntStream.range(0, data.getAttributeCount()).toArray();
+        }
+        int[] visible = Arrays.copyOfRange(axisOrder, zoomFirst, zoomFirst + zoomCount);
+        Arrays.sort(visible);
+        return visible;
+    }
+
+    // Visible slots, rebuilt when the zoom or the panel width changes how many attributes fit
+    private AxisView getView() {
+        if (view == null || view.getWidth() != getWidth()) {
+            view = new AxisView(model, axisOrder, zoomFirst, zoomCount, getWidth());
+            geometry = null;
+        }
+        return view;
+    }
+
+    // Layout is shared by every layer and only rebuilt when the panel is resized
+    private PlotGeometry getGeometry() {
+        AxisView view = getView();
+        if (geometry == null || geometry.getWidth() != getWidth() || geometry.getHeight() != getHeight()) {
+            geometry = new PlotGeometry(getWidth(), getHeight(), view.getSlotCount());
+        }
+        return geometry;
+    }
+
+    private void renderPlotLayer(BufferedImage layer) {
+        // start from a transparent layer, the background and axes are painted beneath it
+        ParallelRasterizer.clear(layer);
+        layerPainter = createLayerPainter(null);
+        layerRowCount = data.getRowCount();
+        layerPainter.draw(layer, null, 0, layerRowCount);
+        layerPainter.finish(layer);
+    }
+
+    /**
+     * A background render threw, its layer holds only the batches drawn before. The error is shown as load errors
+     * are and the layer drawn again from scratch, unless the previous render failed too, then the partial frame
+     * stays until the next change to the plot instead of failing over and over.
+     */
+    private void renderFailed(Throwable cause) {
+        if (cause instanceof UncheckedIOException) {
+            cause = cause.getCause();
+        }
+        boolean failedBefore = renderFailed;
+        renderFailed = true;
+        JOptionPane.showMessageDialog(this, "Could not draw the plot: " + cause.getMessage());
+        if (!failedBefore) {
+            invalidatePlotLayer();
+        }
+    }
+
+    // Small plots finish quicker than a worker hand off, large ones would hold the EDT for seconds
+    private boolean shouldRenderProgressively() {
+        return progressiveRendering && (long) data.getRowCount() * getView().getSlotCount() >= PROGRESSIVE_MIN_SEGMENTS;
+    }
+
+    private void startProgressiveRender() {
+        layerPainter = createLayerPainter(null);
+        layerRowCount = data.getRowCount();
+        renderer.start(getWidth(), getHeight(), layerRowCount, layerPainter, (frame, complete) -> {
+            plotLayer = frame;
+            if (complete) {
+                renderFailed = false;
+                // catch up with rows streamed in while the render was under way, or draw again rows it missed changing
+                drawAppendedRows(frame);
+                if (plotLayerStale) {
+                    invalidatePlotLayer();
                 }
             }
+            repaint();
+        });
+    }
+
+    /**
+     * Painter for the current engine and settings. Everything it reads is captured here on the EDT,
+     * so it can keep drawing on a worker thread while the panel's state moves on. Class ids are read per
+     * call since appending rows may move them to a larger array. strips, when given, limits it to the
+     * strips between axes marked in it.
+     */
+    private ProgressiveRenderer.LayerPainter createLayerPainter(boolean[] strips) {
+        ProgressiveRenderer.LayerPainter painter = createSelectionPainter(strips);
+        if (chunkStore != null && renderMode.isDensity()) {
+            painter = createChunkPainter(painter);
         }
+        return measure(painter, renderMode);
+    }
 
-        // draw axis lines
-        g.setColor(axisColor);
-        for (int i = 1; i < axisCount; i++) {
-            int x = lineSpacing * i;
-            g.drawLine(x-1, 35, x-1, panelHeight - margin);
-            g.drawLine(x, 35, x, panelHeight - margin);
-            g.drawLine(x+1, 35, x+1, panelHeight - margin);
+    /**
+     * Draws the overview rows as a preview, then streams every selected row of the chunk store into a density of
+     * its own once the last overview rows are drawn and shows that instead. Chunks the brushes exclude are skipped,
+     * so unlike the in memory density rows outside the brushes are left out rather than faded.
+     */
+    private ProgressiveRenderer.LayerPainter createChunkPainter(ProgressiveRenderer.LayerPainter preview) {
+        Map<Integer, float[]> brushRanges = new LinkedHashMap<>();
+        for (int col = 0; col < data.getAttributeCount(); col++) {
+            if (brushes.getRange(col) != null) {
+                brushRanges.put(col, brushes.getRange(col));
+            }
         }
-        
-        HashMap<String, Integer> classNums = new HashMap<>();
-        for (int j = 1; j < data.length; j++) {
-            int lastAxisIndex = axisCount - 1; // Index of the last axis
-
-            // Iterate over each axis including the last one
-            for (int i = 1; i <= lastAxisIndex; i++) {
-                int x = lineSpacing * i;
-                g.setColor(colorMap.get(data[j][lastAxisIndex])); // Use color from last axis
-                Float dataPnt;
-                int pos;
-                if (i < lastAxisIndex) {
-                    // For non-last axes, calculate position and draw vertex
-                    dataPnt = Float.parseFloat(data[j][i - 1]);
-                    pos = Math.round((panelHeight + 35 - margin - margin) * ((dataPnt - mins[i - 1]) / (maxes[i - 1] - mins[i - 1])) + margin);
-                    Point point = new Point(x, panelHeight - pos);
-                    pointOverlays.put(point, pointOverlays.getOrDefault(point, 0) + 1);
-                    int size = 7;
-                    if (scaleVertices) {
-                        int sizeRange = 20 - 7; // Range of sizes
-                        int maxOverlays = 8; // Maximum overlays before reaching the maximum size
-                        int overlays = pointOverlays.get(point) - 1; // Number of overlays
-
-                        // Calculate the scaled size
-                        size = Math.min(20, 7 + (int) ((double) overlays / maxOverlays * sizeRange));
+        ChunkRenderer chunks = new ChunkRenderer(chunkStore, axisOrder, zoomFirst, zoomCount, getWidth(), brushRanges);
+        DensityRenderer density = new DensityRenderer(getGeometry());
+        int[] argb = toArgb(classColors);
+        boolean logarithmic = renderMode == RenderMode.DENSITY_LOG;
+        float opacity = alpha;
+        int overviewRows = data.getRowCount();
+        int render = chunkRenders.incrementAndGet();
+        return new ProgressiveRenderer.LayerPainter() {
+            private boolean streamed;
+
+            @Override
+            public void draw(BufferedImage layer, int[] rows, int from, int to) {
+                preview.draw(layer, rows, from, to);
+                if (to == overviewRows) {
+                    try {
+                        streamed = chunks.accumulate(density, argb, () -> chunkRenders.get() != render);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
                     }
-                    g.fillOval(x - size / 2, panelHeight - pos - size / 2, size, size);
+                }
+            }
+
+            @Override
+            public void finish(BufferedImage layer) {
+                if (streamed) {
+                    density.resolve(layer, logarithmic, opacity);
                 } else {
-                    // For the last axis, draw vertex using the last data point
-                    dataPnt = Float.parseFloat(data[j][lastAxisIndex - 1]);
-                    pos = Math.round((panelHeight + 35 - margin - margin) * ((dataPnt - mins[lastAxisIndex - 1]) / (maxes[lastAxisIndex - 1] - mins[lastAxisIndex - 1])) + margin);
-                    Point point = new Point(x, panelHeight - pos);
-                    pointOverlays.put(point, pointOverlays.getOrDefault(point, 0) + 1);
-                    int size = 7;
-                    if (scaleVertices) {
-                        int sizeRange = 20 - 7; // Range of sizes
-                        int maxOverlays = 8; // Maximum overlays before reaching the maximum size
-                        int overlays = pointOverlays.get(point) - 1; // Number of overlays
-
-                        // Calculate the scaled size
-                        size = Math.min(20, 7 + (int) ((double) overlays / maxOverlays * sizeRange));
+                    preview.finish(layer);
+                }
+            }
+        };
+    }
+
+    // Selected rows in the class colors over faded unselected ones, or every row alike without brushes
+    private ProgressiveRenderer.LayerPainter createSelectionPainter(boolean[] strips) {
+        PlotGeometry geometry = getGeometry();
+        AxisView view = getView();
+        AxisHistogram vertexScale = getVertexScale();
+        // heap use depends on the canvas only, selected and faint rows accumulate into the same density
+        DensityRenderer density = renderMode.isDensity() ? new DensityRenderer(geometry) : null;
+        BundleRenderer bundles = renderMode.isAggregate() ? new BundleRenderer(geometry, view, getRowClusters()) : null;
+        // bundles are drawn in the order their painters are made, faint rows beneath the selected ones
+        ProgressiveRenderer.LayerPainter unselected = brushes.isEmpty() ? null
+                : createEnginePainter(geometry, view, fade(classColors), vertexScale, density, bundles, strips);
+        ProgressiveRenderer.LayerPainter selected = createEnginePainter(geometry, view, classColors, vertexScale, density, bundles, strips);
+        if (unselected == null) {
+            return selected;
+        }
+        AxisBrushes selection = brushes;
+        return new ProgressiveRenderer.LayerPainter() {
+            // rows outside the brushes go first, so selected lines stay on top of them
+            @Override
+            public void draw(BufferedImage layer, int[] rows, int from, int to) {
+                long[] bits = selection.getSelection();
+                int[] inside = new int[Math.min(SELECTION_CHUNK, to - from)];
+                int[] outside = new int[inside.length];
+                for (int start = from; start < to; start += SELECTION_CHUNK) {
+                    int end = Math.min(to, start + SELECTION_CHUNK);
+                    int insideCount = 0;
+                    int outsideCount = 0;
+                    for (int i = start; i < end; i++) {
+                        int row = rows == null ? i : rows[i];
+                        // rows newer than the selection are left to the render that follows its update
+                        if (bits != null && row >>> 6 < bits.length && AxisBrushes.isSelected(bits, row)) {
+                            inside[insideCount++] = row;
+                        } else {
+                            outside[outsideCount++] = row;
+                        }
                     }
-                    g.fillOval(x - size / 2, panelHeight - pos - size / 2, size, size);
+                    unselected.draw(layer, outside, 0, outsideCount);
+                    selected.draw(layer, inside, 0, insideCount);
                 }
-                
-                if (i < lastAxisIndex) {
-                    // For non-last axes, draw edge to the next data point
-                    Float nextDataPnt = Float.parseFloat(data[j][i]);
-                    int nextPos = Math.round((panelHeight + 35 - margin - margin) * ((nextDataPnt - mins[i]) / (maxes[i] - mins[i])) + margin);
-                    g.drawLine(x, panelHeight - pos, lineSpacing * (i + 1), panelHeight - nextPos);
+            }
+
+            @Override
+            public void finish(BufferedImage layer) {
+                selected.finish(layer);
+            }
+        };
+    }
+
+    // Counts the rows a painter is given and times its batches, as the rows drawn and draw time of the metrics
+    private static ProgressiveRenderer.LayerPainter measure(ProgressiveRenderer.LayerPainter painter, RenderMode mode) {
+        String engine = mode.toString();
+        return new ProgressiveRenderer.LayerPainter() {
+            @Override
+            public void draw(BufferedImage layer, int[] rows, int from, int to) {
+                Metrics.LayerDraw event = new Metrics.LayerDraw();
+                painter.draw(layer, rows, from, to);
+                event.finish(engine, to - from);
+            }
+
+            @Override
+            public void finish(BufferedImage layer) {
+                Metrics.LayerDraw event = new Metrics.LayerDraw();
+                painter.finish(layer);
+                event.finish(engine, 0);
+            }
+        };
+    }
+
+    // Draws rows in the given colors with the current engine, density and bundle painters share one accumulation
+    private ProgressiveRenderer.LayerPainter createEnginePainter(PlotGeometry geometry, AxisView view, Color[] colors, AxisHistogram vertexScale,
+                                                                DensityRenderer density, BundleRenderer bundles, boolean[] strips) {
+        if (bundles != null) {
+            BundleRenderer.Group group = bundles.addGroup(colors);
+            return new ProgressiveRenderer.LayerPainter() {
+                @Override
+                public void draw(BufferedImage layer, int[] rows, int from, int to) {
+                    group.accumulate(rows, from, to);
+                }
+
+                @Override
+                public void finish(BufferedImage layer) {
+                    bundles.resolve(layer);
+                }
+            };
+        }
+        if (density != null) {
+            // the transparency slider scales the density
+            int[] argb = toArgb(colors);
+            boolean logarithmic = renderMode == RenderMode.DENSITY_LOG;
+            float opacity = alpha;
+            return new ProgressiveRenderer.LayerPainter() {
+                @Override
+                public void draw(BufferedImage layer, int[] rows, int from, int to) {
+                    density.accumulate(view, rows, from, to, data.getClassIds(), argb);
+                }
+
+                @Override
+                public void finish(BufferedImage layer) {
+                    density.resolve(layer, logarithmic, opacity);
+                }
+            };
+        }
+        if (renderMode == RenderMode.PARALLEL_RASTER) {
+            int[] argb = toArgb(colors);
+            return (layer, rows, from, to) ->
+                    ParallelRasterizer.draw(layer, geometry, view, rows, from, to, data.getClassIds(), argb, VERTEX_SIZE, vertexScale, strips);
+        }
+        RenderQuality quality = renderQuality;
+        return (layer, rows, from, to) -> {
+            Graphics2D g = layer.createGraphics();
+            quality.apply(g);
+            int lastSlot = geometry.getAxisCount() - 1;
+            if (strips == null) {
+                Java2DRenderer.draw(g, geometry, view, data.getClassIds(), colors, VERTEX_SIZE, vertexScale, rows, from, to, 0, lastSlot);
+            }
+            for (int strip = 0; strips != null && strip < strips.length; strip++) {
+                if (strips[strip]) {
+                    // the strip's columns as the rasterizer splits them, with what reaches into them from the axis before
+                    int left = ParallelRasterizer.getStripLeft(geometry, strip);
+                    g.setClip(left, 0, ParallelRasterizer.getStripRight(geometry, strip) - left, geometry.getHeight());
+                    Java2DRenderer.draw(g, geometry, view, data.getClassIds(), colors, VERTEX_SIZE, vertexScale, rows, from, to,
+                            Math.max(0, strip - 1), Math.min(lastSlot, strip + 1));
                 }
             }
+            g.dispose();
+        };
+    }
+
+    private static Color[] fade(Color[] colors) {
+        Color[] faded = new Color[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            Color color = colors[i];
+            faded[i] = new Color(color.getRed(), color.getGreen(), color.getBlue(), Math.max(1, Math.round(color.getAlpha() * UNSELECTED_ALPHA)));
+        }
+        return faded;
+    }
+
+    private static int[] toArgb(Color[] colors) {
+        int[] argb = new int[colors.length];
+        for (int i = 0; i < colors.length; i++) {
+            argb[i] = colors[i].getRGB();
+        }
+        return argb;
+    }
+
+    // Stacked per class bars beside each axis, one per histogram bin, bands are left without bars
+    private void drawHistogramBars(Graphics g, PlotGeometry geometry, AxisView view) {
+        AxisHistogram bars = getHistogram();
+        int bins = bars.getBinCount();
+        int maxLength = geometry.getLineSpacing() * 2 / 5;
+        for (int slot = 0; slot < geometry.getAxisCount(); slot++) {
+            if (view.isBand(slot)) {
+                continue;
+            }
+            int axis = view.getAttribute(slot);
+            int maxTotal = bars.getMaxTotal(axis);
+            if (maxTotal == 0) {
+                continue;
+            }
+            for (int bin = 0; bin < bins; bin++) {
+                int top = geometry.toY((bin + 1) / (float) bins);
+                int height = Math.max(1, geometry.toY(bin / (float) bins) - top - 1);
+                int x = geometry.getAxisX(slot) + 2;
+                for (int classId = 0; classId < classColors.length; classId++) {
+                    int length = Math.round((float) maxLength * bars.getCount(axis, classId, bin) / maxTotal);
+                    if (length > 0) {
+                        g.setColor(classColors[classId]);
+                        g.fillRect(x, top + 1, length, height);
+                        x += length;
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    protected void paintComponent(Graphics g) {
+        Metrics.Frame frame = new Metrics.Frame();
+        super.paintComponent(g);
+
+        PlotGeometry geometry = getGeometry();
+        AxisView view = getView();
+
+        // draw axis lines
+        g.setColor(axisColor);
+        int top = PlotGeometry.AXIS_TOP;
+        int bottom = geometry.getAxisBottom();
+        Color bandColor = new Color(axisColor.getRed(), axisColor.getGreen(), axisColor.getBlue(), 96);
+        for (int i = 0; i < geometry.getAxisCount(); i++) {
+            int x = geometry.getAxisX(i);
+            if (view.isBand(i)) {
+                // aggregated attributes get a wider, lighter axis so they read as a summary
+                g.setColor(bandColor);
+                g.fillRect(x - BAND_WIDTH / 2, top, BAND_WIDTH, bottom - top + 1);
+                g.setColor(axisColor);
+                continue;
+            }
+            g.drawLine(x-1, top, x-1, bottom);
+            g.drawLine(x, top, x, bottom);
+            g.drawLine(x+1, top, x+1, bottom);
+        }
+
+        // polylines come from the cached layer, cosmetic changes only repaint the light layers on top
+        if (plotLayer == null || plotLayer.getWidth() != getWidth() || plotLayer.getHeight() != getHeight()) {
+            renderer.cancel();
+            plotLayer = ProgressiveRenderer.createLayer(getWidth(), getHeight());
+            plotLayerValid = false;
+        }
+        boolean layerCached = plotLayerValid;
+        if (!plotLayerValid) {
+            // a progressive render keeps showing the previous frame until its first batch arrives
+            if (shouldRenderProgressively()) {
+                startProgressiveRender();
+            } else {
+                renderPlotLayer(plotLayer);
+            }
+            plotLayerValid = true;
+        }
+        g.drawImage(plotLayer, 0, 0, null);
+
+        if (histogramStyle == AxisHistogram.Style.BARS) {
+            drawHistogramBars(g, geometry, view);
+        }
+        if (!brushes.isEmpty()) {
+            drawBrushes(g, geometry, view);
+        }
+        if (pickedRow >= 0 && pickedRow < data.getRowCount()) {
+            drawPickedRow((Graphics2D) g, geometry, view);
         }
         
         if (showAxisNames) {
-            // draw axis labels
-            for (int i = 1; i < axisCount; i++) {
-                String name = data[0][i-1];
-                JLabel label = new JLabel(name);
-                // Set the position of the label
-                int xPos = lineSpacing * i;
-                xPos -= (int)Math.floor(3*name.length());
-                int yPos = 5;
-                Point position = new Point(xPos, yPos);
-                label.setLocation(position);
-
-                // Set the size of the label
-                int width = 150;
-                int height = 15;
-                Dimension size = new Dimension(width, height);
-                label.setSize(size);
-                label.setForeground(axisColor);
-                add(label);
-
-                if (i < axisCount) {
-                    // label float formatting
-                    DecimalFormat formatter = new DecimalFormat("0.##");
-                    String maxName = formatter.format(maxes[i-1]);
-                    
-                    // Max axis value label
-                    JLabel maxLabel = new JLabel(maxName);
-
-                    // label position
-                    int maxXPos = lineSpacing * i;
-                    maxXPos -= (int)Math.floor(3*maxName.length());
-                    int maxYPos = 18;
-                    Point maxPosition = new Point(maxXPos, maxYPos);
-                    maxLabel.setLocation(maxPosition);
-
-                    // label size
-                    int maxWidth = 50;
-                    int maxHeight = 15;
-                    Dimension maxSize = new Dimension(maxWidth, maxHeight);
-                    maxLabel.setSize(maxSize);
-                    maxLabel.setForeground(axisColor);
-                    add(maxLabel);
-
-                    // min axis value label
-                    String minName = formatter.format(mins[i-1]);
-                    JLabel minLabel = new JLabel(minName);
-
-                    // label position
-                    int minXPos = lineSpacing * i;
-                    minXPos -= (int)Math.floor(3*minName.length());
-                    int minYPos = panelHeight - 65;
-                    Point minPosition = new Point(minXPos, minYPos);
-                    minLabel.setLocation(minPosition);
-
-                    // label size
-                    int minWidth = 50;
-                    int minHeight = 15;
-                    Dimension minSize = new Dimension(minWidth, minHeight);
-                    minLabel.setSize(minSize);
-                    minLabel.setForeground(axisColor);
-                    add(minLabel);
-                }
+            // glyphs are laid out once per view and font, repaints only draw them
+            Graphics2D g2 = (Graphics2D) g;
+            // match the text antialiasing Swing labels get from the desktop
+            Object desktopHints = Toolkit.getDefaultToolkit().getDesktopProperty("awt.font.desktophints");
+            if (desktopHints instanceof Map) {
+                g2.addRenderingHints((Map<?, ?>) desktopHints);
+            }
+            Font labelFont = UIManager.getFont("Label.font");
+            if (axisLabels == null || !axisLabels.matches(view, labelFont, g2.getFontRenderContext())) {
+                axisLabels = new AxisLabels(view, labelFont, g2.getFontRenderContext());
             }
+            axisLabels.draw(g2, geometry, axisColor);
         }
         
         // Draw a legend for the class colors
@@ -305,10 +1300,9 @@ public class PlotPanel extends JPanel {
         int legendWidth = 20;
         // get longest class name
         int longest = 0;
-        classNums = new HashMap<>();
-        for (int j = 1; j < data.length; j++) {
-            String className = data[j][axisCount - 1];
-            classNums.put(className, classNums.getOrDefault(className, 0) + 1);
+        HashMap<String, Integer> classNums = new HashMap<>();
+        for (int classId = 0; classId < classCounts.length; classId++) {
+            classNums.put(data.getClassName(classId), classCounts[classId]);
         }
         for (String className : classNums.keySet()) {
             if (className.length() > longest) {
@@ -335,6 +1329,86 @@ public class PlotPanel extends JPanel {
             g.drawString(className, legendTextX + 15, legendTextY);
             legendTextY += legendSpacing;
         }
+
+        if (showHud) {
+            drawHud((Graphics2D) g);
+        }
+        frame.finish(getWidth(), getHeight(), geometry.getAxisCount(), layerCached);
+    }
+
+    // Timings and cache counts in the top right corner, as of the frame before this one
+    private void drawHud(Graphics2D g) {
+        String[] lines = {
+                String.format("Frame   last %.1f ms  mean %.1f ms  max %.1f ms", millis(Metrics.getLastNanos(Metrics.FRAME)),
+                        millis(Metrics.getTotalNanos(Metrics.FRAME)) / Math.max(1, Metrics.getCalls(Metrics.FRAME)), millis(Metrics.getMaxNanos(Metrics.FRAME))),
+                String.format("Draw    %s  %,d rows  %,.0f rows/s", renderMode, Metrics.getCount(Metrics.ROWS_DRAWN),
+                        Metrics.perSecond(Metrics.ROWS_DRAWN, Metrics.LAYER_DRAW)),
+                String.format("Cache   layer %d/%d  strips %d/%d  dataset %d/%d  columns %d/%d", Metrics.getCount(Metrics.LAYER_CACHE_HIT), Metrics.getCount(Metrics.LAYER_CACHE_MISS),
+                        Metrics.getCount(Metrics.STRIP_CACHE_HIT), Metrics.getCount(Metrics.STRIP_CACHE_MISS),
+                        Metrics.getCount(Metrics.DATASET_CACHE_HIT), Metrics.getCount(Metrics.DATASET_CACHE_MISS),
+                        Metrics.getCount(Metrics.COLUMN_CACHE_HIT), Metrics.getCount(Metrics.COLUMN_CACHE_MISS)),
+                String.format("Chunks  read %d  skipped %d", Metrics.getCount(Metrics.CHUNKS_READ), Metrics.getCount(Metrics.CHUNKS_SKIPPED)),
+                String.format("Load    last %.0f ms  %,.0f rows/s  %.1f MB/s", millis(Metrics.getLastNanos(Metrics.LOAD)),
+                        Metrics.perSecond(Metrics.ROWS_LOADED, Metrics.LOAD), Metrics.perSecond(Metrics.BYTES_READ, Metrics.LOAD) / 1e6),
+                String.format("Scale   last %.1f ms  %d rows", millis(Metrics.getLastNanos(Metrics.NORMALIZE)), data.getRowCount()),
+        };
+        g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 11));
+        int lineHeight = g.getFontMetrics().getHeight();
+        int width = 0;
+        for (String line : lines) {
+            width = Math.max(width, g.getFontMetrics().stringWidth(line));
+        }
+        int x = getWidth() - width - 16;
+        int y = 8;
+        g.setColor(new Color(0, 0, 0, 160));
+        g.fillRect(x - 6, y, width + 12, lineHeight * lines.length + 8);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], x, y + 4 + g.getFontMetrics().getAscent() + i * lineHeight);
+        }
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+
+    // The picked line, opaque and outlined in the axis color so it stands out of any crowd
+    private void drawPickedRow(Graphics2D g, PlotGeometry geometry, AxisView view) {
+        Stroke stroke = g.getStroke();
+        Color classColor = classColors[data.getClassId(pickedRow)];
+        Color[] outline = {axisColor, new Color(classColor.getRed(), classColor.getGreen(), classColor.getBlue())};
+        float[] widths = {4, 2};
+        for (int pass = 0; pass < outline.length; pass++) {
+            g.setStroke(new BasicStroke(widths[pass], BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND));
+            g.setColor(outline[pass]);
+            for (int slot = 0; slot + 1 < geometry.getAxisCount(); slot++) {
+                g.drawLine(geometry.getAxisX(slot), geometry.toY(view.getSlotValues(slot)[pickedRow]),
+                        geometry.getAxisX(slot + 1), geometry.toY(view.getSlotValues(slot + 1)[pickedRow]));
+            }
+        }
+        g.setStroke(stroke);
+    }
+
+    // Brushed ranges over their axes and how many rows they select, above the legend
+    private void drawBrushes(Graphics g, PlotGeometry geometry, AxisView view) {
+        Color fill = new Color(255, 255, 255, 80);
+        for (int slot = 0; slot < geometry.getAxisCount(); slot++) {
+            float[] range = view.isBand(slot) ? null : brushes.getRange(view.getAttribute(slot));
+            if (range == null) {
+                continue;
+            }
+            int col = view.getAttribute(slot);
+            int x = geometry.getAxisX(slot) - BRUSH_WIDTH / 2;
+            int top = geometry.toY(toNormalized(col, range[1]));
+            int bottom = geometry.toY(toNormalized(col, range[0]));
+            g.setColor(fill);
+            g.fillRect(x, top, BRUSH_WIDTH, bottom - top + 1);
+            g.setColor(axisColor);
+            g.drawRect(x, top, BRUSH_WIDTH, bottom - top + 1);
+        }
+        g.setColor(axisColor);
+        g.setFont(g.getFont().deriveFont(11.0f));
+        g.drawString("Selected: " + brushes.getSelectedCount() + " of " + data.getRowCount(), 10, 44);
     }
 
     public boolean isShowingAxisNames() {
@@ -343,8 +1417,15 @@ public class PlotPanel extends JPanel {
 
     public void toggleAxisNames() {
         showAxisNames = !showAxisNames;
-        // clear screen
-        removeAll();
+        repaint();
+    }
+
+    public boolean isShowingHud() {
+        return showHud;
+    }
+
+    public void setShowHud(boolean show) {
+        showHud = show;
         repaint();
     }
 }
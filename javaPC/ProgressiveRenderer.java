@@ -0,0 +1,185 @@
+package javaPC;
+
+import javax.swing.SwingWorker;
+
+import java.awt.image.BufferedImage;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Renders the plot layer on a worker thread in row batches and hands intermediate frames to the EDT.
+ * Rows are drawn in a shuffled order, so the first frame is already a uniform sample that later batches refine.
+ */
+public class ProgressiveRenderer {
+
+    // the first batch is a quick preview, later batches are sized to take about TARGET_BATCH_NANOS
+    // on the chosen engine, so frames keep coming and cancellation stays prompt however slow it is
+    private static final int FIRST_BATCH = 256;
+    private static final int MIN_BATCH = 64;
+    private static final int MAX_BATCH = 1 << 20;
+    private static final long TARGET_BATCH_NANOS = 100_000_000L;
+
+    // minimum time between two intermediate frames
+    private static final long PUBLISH_INTERVAL_NANOS = 50_000_000L;
+
+    // fixed seed so repeated renders of a dataset refine in the same order
+    private static final long SHUFFLE_SEED = 0x5DEECE66DL;
+
+    /**
+     * Draws rows into the layer, called from the worker thread with everything it needs already captured
+     */
+    protected interface LayerPainter {
+
+        // Draw rows[from, to) over the layer, a null rows array means rows from to to in order
+        void draw(BufferedImage layer, int[] rows, int from, int to);
+
+        // Bring the layer up to date before it is shown, for painters that draw into their own buffers
+        default void finish(BufferedImage layer) {
+        }
+    }
+
+    /**
+     * Receives frames on the EDT, complete is true for the last frame of a render
+     */
+    protected interface FrameListener {
+        void frameReady(BufferedImage frame, boolean complete);
+    }
+
+    // told on the EDT about a render whose painter threw, its frames so far may be partial
+    private final Consumer<Throwable> onFailure;
+    private RenderWorker worker;
+
+    // shuffled row order, kept while the row count stays the same
+    private int[] rowOrder;
+
+    protected ProgressiveRenderer(Consumer<Throwable> onFailure) {
+        this.onFailure = onFailure;
+    }
+
+    /**
+     * Start rendering rowCount rows into a new layer, cancelling any render in progress.
+     * onFrame is called on the EDT with each intermediate frame and with the final layer.
+     */
+    protected void start(int width, int height, int rowCount, LayerPainter painter, FrameListener onFrame) {
+        cancel();
+        worker = new RenderWorker(createLayer(width, height), rowCount, painter, onFrame);
+        worker.execute();
+    }
+
+    // Like start, but drawing over a copy of base instead of an empty layer
+    protected void start(BufferedImage base, int rowCount, LayerPainter painter, FrameListener onFrame) {
+        cancel();
+        worker = new RenderWorker(copyOf(base), rowCount, painter, onFrame);
+        worker.execute();
+    }
+
+    // Stop the render in progress, frames it has not delivered yet are dropped
+    protected void cancel() {
+        if (worker != null) {
+            worker.cancel(false);
+            worker = null;
+        }
+    }
+
+    protected boolean isRendering() {
+        return worker != null && !worker.isDone();
+    }
+
+    private synchronized int[] getRowOrder(int rowCount) {
+        if (rowOrder == null || rowOrder.length != rowCount) {
+            int[] order = new int[rowCount];
+            for (int i = 0; i < rowCount; i++) {
+                order[i] = i;
+            }
+            SplittableRandom random = new SplittableRandom(SHUFFLE_SEED);
+            for (int i = rowCount - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int swap = order[i];
+                order[i] = order[j];
+                order[j] = swap;
+            }
+            rowOrder = order;
+        }
+        return rowOrder;
+    }
+
+    // Scale the batch toward the target duration, growing at most fourfold per step
+    private static int nextBatch(int batch, long elapsedNanos) {
+        long scaled = batch * TARGET_BATCH_NANOS / Math.max(1, elapsedNanos);
+        return (int) Math.max(MIN_BATCH, Math.min(Math.min(MAX_BATCH, 4L * batch), scaled));
+    }
+
+    protected static BufferedImage createLayer(int width, int height) {
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+
+    private static BufferedImage copyOf(BufferedImage layer) {
+        return new BufferedImage(layer.getColorModel(), layer.copyData(null), layer.isAlphaPremultiplied(), null);
+    }
+
+    /**
+     * One render, its back buffer is only touched by the worker thread until it is returned as the final frame
+     */
+    private class RenderWorker extends SwingWorker<BufferedImage, BufferedImage> {
+        private final BufferedImage layer;
+        private final int rowCount;
+        private final LayerPainter painter;
+        private final FrameListener onFrame;
+
+        RenderWorker(BufferedImage layer, int rowCount, LayerPainter painter, FrameListener onFrame) {
+            this.layer = layer;
+            this.rowCount = rowCount;
+            this.painter = painter;
+            this.onFrame = onFrame;
+        }
+
+        @Override
+        protected BufferedImage doInBackground() {
+            int[] rows = getRowOrder(rowCount);
+            int batch = FIRST_BATCH;
+            long lastPublish = System.nanoTime() - PUBLISH_INTERVAL_NANOS;
+            for (int from = 0; from < rowCount; ) {
+                if (isCancelled()) {
+                    return null;
+                }
+                int to = Math.min(rowCount, from + batch);
+                long start = System.nanoTime();
+                painter.draw(layer, rows, from, to);
+                batch = nextBatch(batch, System.nanoTime() - start);
+                from = to;
+                if (to < rowCount && System.nanoTime() - lastPublish >= PUBLISH_INTERVAL_NANOS) {
+                    painter.finish(layer);
+                    publish(copyOf(layer));
+                    lastPublish = System.nanoTime();
+                }
+            }
+            painter.finish(layer);
+            return layer;
+        }
+
+        // Runs on the EDT, cancel() also runs there so a cancelled render never shows another frame
+        @Override
+        protected void process(List<BufferedImage> frames) {
+            if (!isCancelled()) {
+                onFrame.frameReady(frames.get(frames.size() - 1), false);
+            }
+        }
+
+        @Override
+        protected void done() {
+            if (isCancelled()) {
+                return;
+            }
+            BufferedImage frame;
+            try {
+                frame = get();
+            } catch (InterruptedException | ExecutionException e) {
+                onFailure.accept(e instanceof ExecutionException ? e.getCause() : e);
+                return;
+            }
+            onFrame.frameReady(frame, true);
+        }
+    }
+}
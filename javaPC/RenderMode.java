@@ -0,0 +1,33 @@
+package javaPC;
+
+/**
+ * Engines that can draw the cached polyline layer
+ */
+public enum RenderMode {
+    JAVA2D("Java2D"),
+    PARALLEL_RASTER("Parallel Raster"),
+    DENSITY_LOG("Density (log)"),
+    DENSITY_LINEAR("Density (linear)"),
+    BUNDLES("Bundles");
+
+    private final String label;
+
+    RenderMode(String label) {
+        this.label = label;
+    }
+
+    // Density modes draw hit counts rather than individual translucent lines
+    public boolean isDensity() {
+        return this == DENSITY_LOG || this == DENSITY_LINEAR;
+    }
+
+    // Bundles draw per cluster bands built from statistics of all their rows
+    public boolean isAggregate() {
+        return this == BUNDLES;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
@@ -0,0 +1,243 @@
+package javaPC;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Rows of each class grouped into a few clusters of similar polylines, by k-means over the normalized
+ * attributes. Centroids are fitted on a sample of every class the first time rows are assigned, and each
+ * row's cluster is remembered once it is found, so later renders, brushes, reorders and appended rows only
+ * assign the rows they have not seen. Valid while the model's coordinates and classes stay as they are.
+ */
+public class RowClusters {
+
+    // clusters fitted per class, fewer when the class has fewer rows
+    protected static final int CLUSTERS_PER_CLASS = 8;
+    // rows per class the centroids are fitted on and the most k-means iterations over them
+    private static final int FIT_SAMPLE = 4096;
+    private static final int MAX_ITERATIONS = 25;
+    // rows assigned per parallel task
+    private static final int ASSIGN_CHUNK = 4096;
+
+    private final PlotModel model;
+    // attributes the rows are compared on
+    private final int[] attributes;
+
+    // centroids of every class one after the other, firstCluster holds where each class's clusters start
+    private float[][] centroids;
+    private int[] classOfCluster;
+    private int[] firstCluster;
+    // cluster of each row, -1 until the row is assigned
+    private int[] membership = new int[0];
+
+    protected RowClusters(PlotModel model, int[] attributes) {
+        this.model = model;
+        this.attributes = attributes.clone();
+    }
+
+    public int[] getAttributes() {
+        return attributes.clone();
+    }
+
+    // Number of clusters over all classes, 0 before the first rows are assigned
+    public synchronized int getClusterCount() {
+        return centroids == null ? 0 : centroids.length;
+    }
+
+    public synchronized int getClassId(int cluster) {
+        return classOfCluster[cluster];
+    }
+
+    /**
+     * Clusters of the rows in rows[from, to), assigning those not seen before. Returns the membership of every
+     * row assigned so far, indexed by row, -1 for rows without a cluster. A null rows array means rows from to to in order.
+     */
+    protected int[] assign(int[] rows, int from, int to) {
+        int maxRow = -1;
+        for (int i = from; i < to; i++) {
+            maxRow = Math.max(maxRow, rows == null ? i : rows[i]);
+        }
+        float[][] fitted = fit();
+        int[] firsts = firstCluster;
+        int[] members = membershipFor(maxRow + 1);
+        float[][] columns = normalizedColumns();
+        int[] classIds = model.getDataset().getClassIds();
+        int chunks = (to - from + ASSIGN_CHUNK - 1) / ASSIGN_CHUNK;
+        IntStream.range(0, chunks).parallel().forEach(chunk -> {
+            int end = Math.min(to, from + (chunk + 1) * ASSIGN_CHUNK);
+            for (int i = from + chunk * ASSIGN_CHUNK; i < end; i++) {
+                int row = rows == null ? i : rows[i];
+                int classId = classIds[row];
+                // a row's cluster never changes, so a cancelled render still running writes the same value;
+                // classes without rows when the centroids were fitted have no clusters and stay at -1
+                if (members[row] < 0 && classId + 1 < firsts.length && firsts[classId] < firsts[classId + 1]) {
+                    members[row] = nearest(fitted, firsts[classId], firsts[classId + 1], columns, row);
+                }
+            }
+        });
+        return members;
+    }
+
+    private synchronized int[] membershipFor(int rowCount) {
+        if (membership.length < rowCount) {
+            int previous = membership.length;
+            // grow along with the dataset, not batch by batch
+            membership = Arrays.copyOf(membership, Math.max(rowCount, previous + previous / 2));
+            Arrays.fill(membership, previous, membership.length, -1);
+        }
+        return membership;
+    }
+
+    // Rows whose values were replaced in place are assigned again by the next render, the centroids stay as fitted
+    protected synchronized void rowsReplaced(int[] rows) {
+        for (int row : rows) {
+            if (row < membership.length) {
+                membership[row] = -1;
+            }
+        }
+    }
+
+    // A dataset read on demand parses the columns it has not cached in one pass
+    private float[][] normalizedColumns() {
+        return model.getNormalized(attributes);
+    }
+
+    // Fit every class on the first call, classes are fitted in parallel from an evenly spaced sample of their rows
+    private synchronized float[][] fit() {
+        if (centroids != null) {
+            return centroids;
+        }
+        Dataset data = model.getDataset();
+        int classCount = data.getClassCount();
+        int[] classSizes = data.countClasses();
+        int[][] samples = new int[classCount][];
+        int[] sampled = new int[classCount];
+        int[] seen = new int[classCount];
+        for (int classId = 0; classId < classCount; classId++) {
+            samples[classId] = new int[Math.min(FIT_SAMPLE, classSizes[classId])];
+        }
+        int[] classIds = data.getClassIds();
+        for (int row = 0; row < data.getRowCount(); row++) {
+            int classId = classIds[row];
+            int[] sample = samples[classId];
+            // the k-th row of the class is taken when it crosses the next of FIT_SAMPLE even steps
+            if (sampled[classId] < sample.length && (long) seen[classId] * sample.length / classSizes[classId] == sampled[classId]) {
+                sample[sampled[classId]++] = row;
+            }
+            seen[classId]++;
+        }
+
+        float[][] columns = normalizedColumns();
+        float[][][] perClass = new float[classCount][][];
+        IntStream.range(0, classCount).parallel().forEach(classId -> perClass[classId] = kMeans(columns, samples[classId], classId));
+
+        firstCluster = new int[classCount + 1];
+        for (int classId = 0; classId < classCount; classId++) {
+            firstCluster[classId + 1] = firstCluster[classId] + perClass[classId].length;
+        }
+        float[][] fitted = new float[firstCluster[classCount]][];
+        classOfCluster = new int[fitted.length];
+        for (int classId = 0; classId < classCount; classId++) {
+            System.arraycopy(perClass[classId], 0, fitted, firstCluster[classId], perClass[classId].length);
+            Arrays.fill(classOfCluster, firstCluster[classId], firstCluster[classId + 1], classId);
+        }
+        centroids = fitted;
+        return centroids;
+    }
+
+    // Lloyd's iterations from a k-means++ start, seeded by the class so a dataset always clusters the same way
+    private static float[][] kMeans(float[][] columns, int[] sample, int classId) {
+        int k = Math.min(CLUSTERS_PER_CLASS, sample.length);
+        int attributeCount = columns.length;
+        float[][] centers = new float[k][];
+        SplittableRandom random = new SplittableRandom(classId);
+        double[] distances = new double[sample.length];
+        Arrays.fill(distances, Double.MAX_VALUE);
+        int chosen = sample.length == 0 ? -1 : random.nextInt(sample.length);
+        for (int cluster = 0; cluster < k; cluster++) {
+            centers[cluster] = rowValues(columns, sample[chosen]);
+            // the next center is drawn with probability growing with the squared distance to the nearest one
+            double total = 0;
+            for (int i = 0; i < sample.length; i++) {
+                distances[i] = Math.min(distances[i], distance(centers[cluster], columns, sample[i], Double.MAX_VALUE));
+                total += distances[i];
+            }
+            double target = random.nextDouble() * total;
+            chosen = random.nextInt(sample.length);
+            for (int i = 0; i < sample.length && total > 0; i++) {
+                target -= distances[i];
+                if (target < 0) {
+                    chosen = i;
+                    break;
+                }
+            }
+        }
+
+        int[] assigned = new int[sample.length];
+        Arrays.fill(assigned, -1);
+        double[][] sums = new double[k][attributeCount];
+        int[] counts = new int[k];
+        for (int iteration = 0; iteration < MAX_ITERATIONS; iteration++) {
+            boolean moved = false;
+            for (int i = 0; i < sample.length; i++) {
+                int cluster = nearest(centers, 0, k, columns, sample[i]);
+                moved |= cluster != assigned[i];
+                assigned[i] = cluster;
+            }
+            if (!moved) {
+                break;
+            }
+            for (double[] sum : sums) {
+                Arrays.fill(sum, 0);
+            }
+            Arrays.fill(counts, 0);
+            for (int i = 0; i < sample.length; i++) {
+                double[] sum = sums[assigned[i]];
+                for (int col = 0; col < attributeCount; col++) {
+                    sum[col] += columns[col][sample[i]];
+                }
+                counts[assigned[i]]++;
+            }
+            // a cluster left empty keeps its center
+            for (int cluster = 0; cluster < k; cluster++) {
+                for (int col = 0; col < attributeCount && counts[cluster] > 0; col++) {
+                    centers[cluster][col] = (float) (sums[cluster][col] / counts[cluster]);
+                }
+            }
+        }
+        return centers;
+    }
+
+    private static float[] rowValues(float[][] columns, int row) {
+        float[] values = new float[columns.length];
+        for (int col = 0; col < columns.length; col++) {
+            values[col] = columns[col][row];
+        }
+        return values;
+    }
+
+    // Closest of centers[first, end), the first one when every distance is NaN
+    private static int nearest(float[][] centers, int first, int end, float[][] columns, int row) {
+        int best = first;
+        double bestDistance = Double.MAX_VALUE;
+        for (int cluster = first; cluster < end; cluster++) {
+            double distance = distance(centers[cluster], columns, row, bestDistance);
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = cluster;
+            }
+        }
+        return best;
+    }
+
+    // Squared distance from a center to a row, given up once it passes limit
+    private static double distance(float[] center, float[][] columns, int row, double limit) {
+        double sum = 0;
+        for (int col = 0; col < center.length && sum < limit; col++) {
+            float difference = columns[col][row] - center[col];
+            sum += difference * difference;
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,149 @@
+package javaPC;
+
+import javax.swing.SwingUtilities;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Live source of CSV lines, parsed on its own reader thread and handed to the EDT in batches.
+ * The first line is the header, every later line a row with the class label last.
+ */
+public abstract class RowStream implements Closeable {
+
+    // rows moved into the dataset per drain, so a large backlog does not stall the EDT
+    private static final int MAX_DRAIN_ROWS = 1 << 18;
+
+    private final String name;
+    private volatile boolean closed;
+
+    private String[] header;
+    private boolean expectHeader = true;
+    private float[] values;
+    private Consumer<String[]> onHeader;
+
+    // rows parsed but not yet drained, values are stored row after row
+    private float[] pendingValues = new float[0];
+    private final ArrayList<String> pendingClasses = new ArrayList<>();
+    private int pendingStart;
+    private long lineNumber;
+    private long skippedLines;
+
+    protected RowStream(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    // Read lines until the source ends or the stream is closed, runs on the reader thread
+    protected abstract void readLines() throws IOException;
+
+    // Unblock the reader thread, for sources waiting in a blocking call
+    protected void closeSource() throws IOException {
+    }
+
+    /**
+     * Start the reader thread. onHeader is called on the EDT once the header has arrived,
+     * rows can be drained from then on. onError is called on the EDT if the source fails
+     * while the stream is open, no more rows arrive after it.
+     */
+    protected void start(Consumer<String[]> onHeader, Consumer<IOException> onError) {
+        this.onHeader = onHeader;
+        Thread reader = new Thread(() -> {
+            try {
+                readLines();
+            } catch (IOException e) {
+                if (!closed) {
+                    SwingUtilities.invokeLater(() -> onError.accept(e));
+                }
+            }
+        }, "javaPC stream " + name);
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        closeSource();
+    }
+
+    protected boolean isClosed() {
+        return closed;
+    }
+
+    // Mark the start of a new connection or a rewritten file, its first line is a header again
+    protected synchronized void restart() {
+        expectHeader = true;
+    }
+
+    /**
+     * Take one line from the source. A repeated header is skipped, a header that does not match
+     * the first one ends the source and rows that do not parse are counted and dropped.
+     */
+    protected void acceptLine(String line) throws IOException {
+        if (line.isEmpty()) {
+            return;
+        }
+        synchronized (this) {
+            lineNumber++;
+            if (expectHeader) {
+                expectHeader = false;
+                String[] parsed = CsvParser.parseHeader(line);
+                if (header == null) {
+                    header = parsed;
+                    values = new float[header.length - 1];
+                    SwingUtilities.invokeLater(() -> onHeader.accept(parsed));
+                } else if (!Arrays.equals(header, parsed)) {
+                    throw new IOException(name + ": header " + line + " does not match " + String.join(",", header));
+                }
+                return;
+            }
+            try {
+                String className = CsvParser.parseRow(line, values, (int) Math.min(Integer.MAX_VALUE, lineNumber));
+                if ((pendingClasses.size() + 1) * values.length > pendingValues.length) {
+                    compactPending(Math.max(16, 2 * (pendingClasses.size() - pendingStart + 1)));
+                }
+                System.arraycopy(values, 0, pendingValues, pendingClasses.size() * values.length, values.length);
+                pendingClasses.add(className);
+            } catch (NumberFormatException e) {
+                skippedLines++;
+            }
+        }
+    }
+
+    // Move the undrained rows to the front of a buffer able to hold capacity rows
+    private void compactPending(int capacity) {
+        int rows = pendingClasses.size() - pendingStart;
+        float[] grown = new float[capacity * values.length];
+        System.arraycopy(pendingValues, pendingStart * values.length, grown, 0, rows * values.length);
+        pendingValues = grown;
+        pendingClasses.subList(0, pendingStart).clear();
+        pendingStart = 0;
+    }
+
+    // Append waiting rows to the dataset, called on the EDT, returns the number of rows added
+    protected synchronized int drainInto(Dataset data) {
+        int rows = Math.min(MAX_DRAIN_ROWS, pendingClasses.size() - pendingStart);
+        float[] row = new float[data.getAttributeCount()];
+        for (int i = 0; i < rows; i++) {
+            System.arraycopy(pendingValues, (pendingStart + i) * row.length, row, 0, row.length);
+            data.addRow(row, pendingClasses.get(pendingStart + i));
+        }
+        pendingStart += rows;
+        if (pendingStart == pendingClasses.size()) {
+            pendingClasses.clear();
+            pendingStart = 0;
+        }
+        return rows;
+    }
+
+    public synchronized long getSkippedLines() {
+        return skippedLines;
+    }
+}
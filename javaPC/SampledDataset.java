@@ -0,0 +1,38 @@
+package javaPC;
+
+import java.util.Arrays;
+
+/**
+ * Rows sampled from a larger file, together with the full file's row count, class counts and attribute
+ * ranges. The plot is scaled to the full ranges, so it keeps its axes when the sample is refined.
+ */
+public class SampledDataset extends Dataset {
+
+    private final long fullRowCount;
+    private final long[] fullClassCounts;
+    private final float[] fullMins;
+    private final float[] fullMaxes;
+
+    // Class ids of fullClassCounts must be interned by the caller before rows are added
+    protected SampledDataset(String[] header, int capacity, long fullRowCount, long[] fullClassCounts, float[] fullMins, float[] fullMaxes) {
+        super(header, capacity);
+        this.fullRowCount = fullRowCount;
+        this.fullClassCounts = fullClassCounts;
+        this.fullMins = fullMins;
+        this.fullMaxes = fullMaxes;
+    }
+
+    public long getFullRowCount() {
+        return fullRowCount;
+    }
+
+    // Rows per class id in the whole file, not just the sample
+    public long[] countFullClasses() {
+        return Arrays.copyOf(fullClassCounts, getClassCount());
+    }
+
+    @Override
+    protected float[] getTrackedRange(int col) {
+        return new float[] {fullMins[col], fullMaxes[col]};
+    }
+}
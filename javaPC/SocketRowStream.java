@@ -0,0 +1,55 @@
+package javaPC;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Accepts CSV lines from local clients, one connection at a time, each starting with the header line
+ */
+public class SocketRowStream extends RowStream {
+
+    private final ServerSocket server;
+    private volatile Socket client;
+
+    // Binds to the loopback address only, so other machines cannot feed the plot
+    protected SocketRowStream(int port) throws IOException {
+        super("localhost:" + port);
+        server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+    }
+
+    @Override
+    protected void readLines() throws IOException {
+        while (!isClosed()) {
+            try (Socket connection = server.accept();
+                 BufferedReader in = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+                client = connection;
+                restart();
+                String line;
+                while ((line = in.readLine()) != null) {
+                    acceptLine(line);
+                }
+            } catch (IOException e) {
+                // a bad or dropped client ends its connection, the next one may still connect
+                if (!isClosed()) {
+                    System.err.println(e.getMessage());
+                }
+            } finally {
+                client = null;
+            }
+        }
+    }
+
+    @Override
+    protected void closeSource() throws IOException {
+        server.close();
+        Socket connection = client;
+        if (connection != null) {
+            connection.close();
+        }
+    }
+}
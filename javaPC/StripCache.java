@@ -0,0 +1,111 @@
+package javaPC;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Pixels of the plot layer between neighbouring axes, kept by the attributes they were drawn from, so a
+ * reordered plot only draws the strips whose axes changed. A strip holds the segments between its left and
+ * right axis and their vertices, and in its first column the ends of the segments arriving from the axis
+ * before it, so it is keyed by those three attributes. Only valid for the geometry and drawing settings
+ * it was cut under.
+ */
+public class StripCache {
+
+    // pixels kept across reorders, 64 MB
+    private static final long MAX_PIXELS = 16L << 20;
+    // attribute indexes are packed 20 bits each into a key
+    private static final int MAX_ATTRIBUTES = (1 << 20) - 1;
+
+    private final int width;
+    private final int height;
+    private final int axisCount;
+
+    // least recently used first
+    private final LinkedHashMap<Long, int[]> strips = new LinkedHashMap<>(16, 0.75f, true);
+    private long pixelCount;
+
+    protected StripCache(PlotGeometry geometry) {
+        width = geometry.getWidth();
+        height = geometry.getHeight();
+        axisCount = geometry.getAxisCount();
+    }
+
+    // Bands average attributes depending on the zoom, only plain axes have strips that can move
+    protected static boolean supports(AxisView view) {
+        return !view.isAggregated() && view.getModel().getDataset().getAttributeCount() < MAX_ATTRIBUTES;
+    }
+
+    // Strips line up with the axes of this geometry only
+    protected boolean fits(PlotGeometry geometry) {
+        return geometry.getWidth() == width && geometry.getHeight() == height && geometry.getAxisCount() == axisCount;
+    }
+
+    // Copy every strip of a complete layer drawn for the view
+    protected void store(BufferedImage layer, PlotGeometry geometry, AxisView view) {
+        int[] pixels = ((DataBufferInt) layer.getRaster().getDataBuffer()).getData();
+        for (int strip = 0; strip < ParallelRasterizer.getStripCount(geometry); strip++) {
+            long key = keyOf(view, strip);
+            // a strip already kept is only marked as recently used
+            if (strips.get(key) != null) {
+                continue;
+            }
+            int left = ParallelRasterizer.getStripLeft(geometry, strip);
+            int stripWidth = ParallelRasterizer.getStripRight(geometry, strip) - left;
+            int[] copy = new int[stripWidth * height];
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(pixels, y * width + left, copy, y * stripWidth, stripWidth);
+            }
+            strips.put(key, copy);
+            pixelCount += copy.length;
+        }
+        // the strips just stored are the most recent, older arrangements go first
+        Iterator<Map.Entry<Long, int[]>> eldest = strips.entrySet().iterator();
+        while (pixelCount > MAX_PIXELS && eldest.hasNext()) {
+            pixelCount -= eldest.next().getValue().length;
+            eldest.remove();
+        }
+    }
+
+    /**
+     * Copy the cached strips of the view into an empty layer. Returns which strips were not cached and still
+     * have to be drawn, or null when every strip was.
+     */
+    protected boolean[] restore(BufferedImage layer, PlotGeometry geometry, AxisView view) {
+        int[] pixels = ((DataBufferInt) layer.getRaster().getDataBuffer()).getData();
+        int stripCount = ParallelRasterizer.getStripCount(geometry);
+        boolean[] missing = new boolean[stripCount];
+        boolean anyMissing = false;
+        for (int strip = 0; strip < stripCount; strip++) {
+            int[] copy = strips.get(keyOf(view, strip));
+            if (copy == null) {
+                missing[strip] = true;
+                anyMissing = true;
+                Metrics.add(Metrics.STRIP_CACHE_MISS, 1);
+                continue;
+            }
+            Metrics.add(Metrics.STRIP_CACHE_HIT, 1);
+            int left = ParallelRasterizer.getStripLeft(geometry, strip);
+            int stripWidth = ParallelRasterizer.getStripRight(geometry, strip) - left;
+            for (int y = 0; y < height; y++) {
+                System.arraycopy(copy, y * stripWidth, pixels, y * width + left, stripWidth);
+            }
+        }
+        return anyMissing ? missing : null;
+    }
+
+    /**
+     * The outer strips reach the edges of the layer, so they only match strips drawn in the same place.
+     * Inner strips all have the same width and match wherever they were drawn.
+     */
+    private long keyOf(AxisView view, int strip) {
+        int stripCount = axisCount == 0 ? 0 : Math.max(1, axisCount - 1);
+        long place = (strip == 0 ? 1 : 0) | (strip == stripCount - 1 ? 2 : 0);
+        long previous = strip > 0 ? view.getAttribute(strip - 1) + 1 : 0;
+        long right = strip + 1 < view.getSlotCount() ? view.getAttribute(strip + 1) + 1 : 0;
+        return place << 60 | previous << 40 | (long) view.getAttribute(strip) << 20 | right;
+    }
+}
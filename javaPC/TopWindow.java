@@ -2,6 +2,7 @@ package javaPC;
 
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
 
@@ -13,7 +14,10 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.BorderLayout;
 
+import java.io.IOException;
 import java.util.HashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Window container class
@@ -26,6 +30,7 @@ public class TopWindow extends JFrame {
     private static final int HEIGHT = 800;
 
     private PlotPanel pcPlot;
+    private final UiRibbon ribbon;
 
     protected TopWindow() {
         // Initialize the window settings
@@ -37,7 +42,7 @@ public class TopWindow extends JFrame {
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
         // Add components
-        UiRibbon ribbon = new UiRibbon(this);
+        ribbon = new UiRibbon(this);
         JPanel bottomPanel = createBottomPanel(ribbon);
         add(bottomPanel, BorderLayout.SOUTH);
 
@@ -76,19 +81,56 @@ public class TopWindow extends JFrame {
         setVisible(true);
     }
 
-    protected void render(String dataset, String[][] data) {
-        if (pcPlot != null) {
-            remove(pcPlot);
+    protected void render(String dataset, Dataset data) {
+        PlotPanel previous = pcPlot;
+        if (previous != null) {
+            remove(previous);
         }
 
         updateTitleWithClassCounts(dataset, data);
         pcPlot = new PlotPanel(data);
+        if (previous != null) {
+            pcPlot.copyLook(previous);
+        }
+        // streamed rows and a sliding window's evictions change the counts after the first render
+        pcPlot.addPropertyChangeListener("classCounts", e -> {
+            updateTitleWithClassCounts(dataset, data);
+            // classes first seen in a stream become selectable for recoloring
+            if (((int[]) e.getNewValue()).length > ((int[]) e.getOldValue()).length) {
+                ribbon.updateClassSelector(data);
+            }
+        });
         add(pcPlot, BorderLayout.CENTER);
         init();
     }
 
-    private void updateTitleWithClassCounts(String dataset, String[][] data) {
-        HashMap<String, Integer> classCounts = countClasses(data);
+    /**
+     * Plot rows from a live source, starting with an empty dataset made by createDataset once the source's
+     * header arrives and growing it as rows come in. onStarted runs after the plot is shown. If the source
+     * fails, for example a followed file replaced by one with another header, the rows so far stay plotted
+     * and the title and a dialog say the stream stopped.
+     */
+    protected void renderStream(RowStream stream, Function<String[], Dataset> createDataset, Consumer<Dataset> onStarted) {
+        stream.start(header -> {
+            Dataset data = createDataset.apply(header);
+            render(stream.getName(), data);
+            pcPlot.attachStream(stream);
+            onStarted.accept(data);
+        }, error -> {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (pcPlot != null && pcPlot.endStream(stream)) {
+                setTitle(getTitle() + " - stream stopped");
+            }
+            JOptionPane.showMessageDialog(this, "Stream " + stream.getName() + " stopped: " + error.getMessage());
+        });
+    }
+
+    private void updateTitleWithClassCounts(String dataset, Dataset data) {
+        HashMap<String, Long> classCounts = countClasses(data);
         StringBuilder casesPerClass = new StringBuilder();
         for (String key : classCounts.keySet()) {
             casesPerClass.append(key + ": " + classCounts.get(key) + ", ");
@@ -98,14 +140,26 @@ public class TopWindow extends JFrame {
             casesPerClass.setLength(casesPerClass.length() - 2);
         }
 
-        setTitle(TITLE + " - " + dataset + " - " + (data.length - 1) + " Cases - [" + casesPerClass.toString() + "]");
+        String cases = data.getRowCount() + " Cases";
+        if (data instanceof SampledDataset) {
+            // a sample reports the whole file, with the rows actually drawn
+            cases = ((SampledDataset) data).getFullRowCount() + " Cases (" + data.getRowCount() + " drawn)";
+        }
+        setTitle(TITLE + " - " + dataset + " - " + cases + " - [" + casesPerClass.toString() + "]");
     }
 
-    private HashMap<String, Integer> countClasses(String[][] data) {
-        HashMap<String, Integer> classCounts = new HashMap<>();
-        for (int i = 1; i < data.length; i++) {
-            String className = data[i][data[i].length - 1];
-            classCounts.put(className, classCounts.getOrDefault(className, 0) + 1);
+    private HashMap<String, Long> countClasses(Dataset data) {
+        HashMap<String, Long> classCounts = new HashMap<>();
+        if (data instanceof SampledDataset) {
+            long[] counts = ((SampledDataset) data).countFullClasses();
+            for (int classId = 0; classId < counts.length; classId++) {
+                classCounts.put(data.getClassName(classId), counts[classId]);
+            }
+            return classCounts;
+        }
+        int[] counts = data.countClasses();
+        for (int classId = 0; classId < counts.length; classId++) {
+            classCounts.put(data.getClassName(classId), (long) counts[classId]);
         }
         return classCounts;
     }
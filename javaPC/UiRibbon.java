@@ -7,7 +7,10 @@ import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.io.File;
-import java.util.HashSet;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Consumer;
 
 /**
  * Ui ribbon class
@@ -18,6 +21,10 @@ public class UiRibbon extends JPanel {
     protected static final int HEIGHT = 60;
 
     private File loadedCSV;
+    private SwingWorker<Dataset, Void> pendingLoad;  // file being read for the plot, dropped if a stream starts first
+    private RowStream pendingStream;  // live source still waiting for its header
+    private int windowRows;  // sliding window for new streams, 0 rows and 0 ms keep every row
+    private long windowMillis;
     private JComboBox<String> classSelector;  // Dropdown for class names
 
     protected UiRibbon(TopWindow parent) {
@@ -29,23 +36,38 @@ public class UiRibbon extends JPanel {
 
         // Create and configure UI components
         JButton buttonLoadCSV = new JButton("Load CSV");
+        JButton buttonLoadAll = new JButton("Load All Rows");  // Replaces a large file's sample with every row
+        JProgressBar loadProgress = new JProgressBar();  // Shown while a file is read
+        JButton buttonStream = new JButton("Stream");  // Live rows from a growing file or a local socket
         JButton buttonToggleAxisNames = new JButton("Toggle Labels");
+        JButton buttonOrderAxes = new JButton("Order Axes");  // Correlated attributes side by side
         JButton buttonChangeBackground = new JButton("Background Color");
         JButton buttonChangeAxisColor = new JButton("Axis Color");
         JButton buttonScaleVertices = new JButton("Histogram");
+        JSpinner binSpinner = new JSpinner(new SpinnerNumberModel(AxisHistogram.DEFAULT_BINS, 2, 200, 1));  // Histogram bin count
         JSlider transparencySlider = createTransparencySlider(parent);
         JLabel sliderLabel = new JLabel("Transparency");
         sliderLabel.setLabelFor(transparencySlider);
         classSelector = new JComboBox<>();  // Initialize dropdown
         JButton colorButton = new JButton("Change Class Color");  // Button for changing class color
+        JComboBox<RenderMode> renderModeSelector = new JComboBox<>(RenderMode.values());  // Dropdown for render engines
+        JComboBox<RenderQuality> qualitySelector = new JComboBox<>(RenderQuality.values());  // Java2D rendering hints
 
         // Initially disable buttons that should only be active after a CSV is loaded
+        buttonLoadAll.setVisible(false);
+        loadProgress.setIndeterminate(true);
+        loadProgress.setStringPainted(true);
+        loadProgress.setVisible(false);
         buttonToggleAxisNames.setEnabled(false);
+        buttonOrderAxes.setEnabled(false);
         buttonChangeBackground.setEnabled(false);
         buttonChangeAxisColor.setEnabled(false);
         classSelector.setEnabled(false);
         colorButton.setEnabled(false);
         buttonScaleVertices.setEnabled(false);
+        renderModeSelector.setEnabled(false);
+        qualitySelector.setEnabled(false);
+        binSpinner.setEnabled(false);
 
         // Add components to the panel
         GridBagConstraints constraints = new GridBagConstraints();
@@ -54,34 +76,212 @@ public class UiRibbon extends JPanel {
         constraints.anchor = GridBagConstraints.WEST;
         constraints.insets = new Insets(0, 10, 0, 0);
         addComponent(constraints, buttonLoadCSV);
+        addComponent(constraints, buttonLoadAll);
+        addComponent(constraints, loadProgress);
+        addComponent(constraints, buttonStream);
         addComponent(constraints, buttonToggleAxisNames);
+        addComponent(constraints, buttonOrderAxes);
         addComponent(constraints, buttonChangeBackground);
         addComponent(constraints, buttonChangeAxisColor);
         addComponent(constraints, buttonScaleVertices);
+        addComponent(constraints, binSpinner);
+        addComponent(constraints, renderModeSelector);
+        addComponent(constraints, qualitySelector);
         addComponent(constraints, sliderLabel);
         addComponent(constraints, transparencySlider);
 
-        // Handle CSV loading
+        // Handle CSV loading, read in the background since even a sample of a huge file reads every byte for its ranges
         buttonLoadCSV.addActionListener(event -> {
-            loadedCSV = CsvParser.loadCSVFile();
-            if (loadedCSV == null) {
+            File file = CsvParser.loadCSVFile();
+            if (file == null) {
                 JOptionPane.showMessageDialog(null, "The file selected is not a CSV, please try again.");
-                disableComponents(buttonToggleAxisNames, buttonChangeBackground, buttonChangeAxisColor, classSelector, colorButton, buttonScaleVertices);
-            } else {
-                String[][] data = CsvParser.parseCSVFile(loadedCSV);
-                parent.render(loadedCSV.getName(), data);
-                updateClassSelector(data);  // Populate dropdown with class names
-                enableComponents(buttonToggleAxisNames, buttonChangeBackground, buttonChangeAxisColor, classSelector, colorButton, buttonScaleVertices);
+                disableComponents(buttonToggleAxisNames, buttonOrderAxes, buttonChangeBackground, buttonChangeAxisColor, classSelector, colorButton, buttonScaleVertices, binSpinner, renderModeSelector, qualitySelector);
+                return;
+            }
+            buttonLoadCSV.setEnabled(false);
+            loadProgress.setString("Loading " + file.getName());
+            loadProgress.setVisible(true);
+            revalidate();
+            pendingLoad = new SwingWorker<Dataset, Void>() {
+                @Override
+                protected Dataset doInBackground() throws IOException {
+                    return CsvParser.parseCSVFile(file);
+                }
+
+                @Override
+                protected void done() {
+                    buttonLoadCSV.setEnabled(true);
+                    loadProgress.setVisible(false);
+                    revalidate();
+                    // a stream was started meanwhile
+                    if (isCancelled()) {
+                        return;
+                    }
+                    pendingLoad = null;
+                    Dataset data;
+                    try {
+                        data = get();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    } catch (ExecutionException e) {
+                        Throwable cause = e.getCause();
+                        JOptionPane.showMessageDialog(null, cause instanceof NumberFormatException
+                                ? "Dataset contains non-numeric values or class column is not last column."
+                                : "Could not load " + file.getName() + ": " + cause.getMessage());
+                        return;
+                    }
+                    loadedCSV = file;
+                    closePendingStream();
+                    parent.render(file.getName(), data);
+                    updateClassSelector(data);  // Populate dropdown with class names
+                    enableComponents(buttonToggleAxisNames, buttonOrderAxes, buttonChangeBackground, buttonChangeAxisColor, classSelector, colorButton, buttonScaleVertices, binSpinner, renderModeSelector, qualitySelector);
+                    // large files open as a sample, every row can be loaded on request
+                    buttonLoadAll.setVisible(data instanceof SampledDataset);
+                    buttonLoadAll.setEnabled(true);
+                    buttonLoadAll.setText("Load All Rows");
+                    revalidate();
+                }
+            };
+            pendingLoad.execute();
+        });
+
+        // Read the whole file in the background, the sample stays interactive until it is replaced
+        buttonLoadAll.addActionListener(event -> {
+            File file = loadedCSV;
+            buttonLoadAll.setEnabled(false);
+            buttonLoadAll.setText("Loading...");
+            new SwingWorker<Dataset, Void>() {
+                @Override
+                protected Dataset doInBackground() throws IOException {
+                    return CsvParser.readDataset(file);
+                }
+
+                @Override
+                protected void done() {
+                    // another file or a stream was opened meanwhile
+                    if (file != loadedCSV || !buttonLoadAll.isVisible()) {
+                        return;
+                    }
+                    try {
+                        Dataset data = get();
+                        parent.render(file.getName(), data);
+                        updateClassSelector(data);
+                        buttonLoadAll.setVisible(false);
+                        revalidate();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                        buttonLoadAll.setEnabled(true);
+                        buttonLoadAll.setText("Load All Rows");
+                        JOptionPane.showMessageDialog(null, "Could not load every row: " + e.getCause().getMessage());
+                    }
+                }
+            }.execute();
+        });
+
+        // Correlations read every row, so they are computed in the background and the plot keeps responding
+        buttonOrderAxes.addActionListener(event -> {
+            PlotPanel panel = parent.getPlotPanel();
+            buttonOrderAxes.setEnabled(false);
+            new SwingWorker<int[], Void>() {
+                @Override
+                protected int[] doInBackground() {
+                    return panel.findCorrelatedAxisOrder();
+                }
+
+                @Override
+                protected void done() {
+                    buttonOrderAxes.setEnabled(true);
+                    // another dataset was opened meanwhile
+                    if (panel != parent.getPlotPanel()) {
+                        return;
+                    }
+                    try {
+                        panel.setAxisOrder(get());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (ExecutionException e) {
+                        JOptionPane.showMessageDialog(null, "Could not order the axes: " + e.getCause().getMessage());
+                    }
+                }
+            }.execute();
+        });
+
+        // Stream menu, rows keep arriving after the plot is shown
+        JPopupMenu streamMenu = new JPopupMenu();
+        JMenuItem followFileItem = new JMenuItem("Follow CSV file...");
+        JMenuItem listenItem = new JMenuItem("Listen on local port...");
+        JMenuItem windowItem = new JMenuItem(describeWindow());
+        streamMenu.add(followFileItem);
+        streamMenu.add(listenItem);
+        streamMenu.addSeparator();
+        streamMenu.add(windowItem);
+        buttonStream.addActionListener(event -> streamMenu.show(buttonStream, 0, -streamMenu.getPreferredSize().height));
+
+        Consumer<Dataset> onStreamStarted = data -> {
+            pendingStream = null;
+            buttonLoadAll.setVisible(false);
+            updateClassSelector(data);
+            enableComponents(buttonToggleAxisNames, buttonOrderAxes, buttonChangeBackground, buttonChangeAxisColor, classSelector, colorButton, buttonScaleVertices, binSpinner, renderModeSelector, qualitySelector);
+        };
+        followFileItem.addActionListener(event -> {
+            File file = CsvParser.loadCSVFile();
+            if (file == null) {
+                JOptionPane.showMessageDialog(null, "The file selected is not a CSV, please try again.");
+                return;
+            }
+            startStream(parent, new CsvTailStream(file), onStreamStarted);
+        });
+        listenItem.addActionListener(event -> {
+            String port = JOptionPane.showInputDialog(null, "Port to accept CSV lines on, the first line of each connection is the header:", "5555");
+            if (port == null) {
+                return;
+            }
+            try {
+                startStream(parent, new SocketRowStream(Integer.parseInt(port.trim())), onStreamStarted);
+            } catch (IllegalArgumentException | IOException e) {
+                JOptionPane.showMessageDialog(null, "Could not listen on port " + port + ": " + e.getMessage());
+            }
+        });
+
+        windowItem.addActionListener(event -> {
+            String window = JOptionPane.showInputDialog(null,
+                    "Keep only the newest rows of the next stream: a row count, seconds like 30s, or both like 100000, 30s.\n"
+                            + "Leave empty to keep every row.", windowRows == 0 && windowMillis == 0 ? "" : describeWindowValue());
+            if (window == null) {
+                return;
+            }
+            try {
+                parseWindow(window);
+                windowItem.setText(describeWindow());
+            } catch (NumberFormatException e) {
+                JOptionPane.showMessageDialog(null, "Not a window size: " + window);
             }
         });
 
         buttonScaleVertices.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent event) {
-                parent.getPlotPanel().toggleScaleVertices();
+                AxisHistogram.Style style = parent.getPlotPanel().cycleHistogramStyle();
+                buttonScaleVertices.setText(style == AxisHistogram.Style.OFF ? "Histogram" : "Histogram: " + style.name().toLowerCase());
             }
         });
 
+        binSpinner.addChangeListener(e -> {
+            parent.getPlotPanel().setHistogramBins((Integer) binSpinner.getValue());
+        });
+
+        // Switch the engine drawing the polylines so the two can be compared
+        renderModeSelector.addActionListener(e -> {
+            parent.getPlotPanel().setRenderMode((RenderMode) renderModeSelector.getSelectedItem());
+        });
+
+        // Trade Java2D drawing speed for antialiased lines
+        qualitySelector.addActionListener(e -> {
+            parent.getPlotPanel().setRenderQuality((RenderQuality) qualitySelector.getSelectedItem());
+        });
+
         // Add action listener to the "Toggle Axis Names" button
         buttonToggleAxisNames.addActionListener(new ActionListener() {
             @Override
@@ -145,6 +345,71 @@ public class UiRibbon extends JPanel {
         return slider;
     }    
 
+    private void startStream(TopWindow parent, RowStream stream, Consumer<Dataset> onStarted) {
+        closePendingStream();
+        // the file still being read would replace the stream once done
+        if (pendingLoad != null) {
+            pendingLoad.cancel(false);
+            pendingLoad = null;
+        }
+        pendingStream = stream;
+        int rows = windowRows;
+        long millis = windowMillis;
+        parent.renderStream(stream, header -> {
+            if (rows == 0 && millis == 0) {
+                return new Dataset(header);
+            }
+            // a window bounded by time alone still needs a fixed buffer size
+            return new WindowedDataset(header, rows > 0 ? rows : WindowedDataset.DEFAULT_CAPACITY, millis);
+        }, onStarted);
+    }
+
+    // Accepts a row count, a number of seconds ending in s, or both separated by a comma or space
+    private void parseWindow(String window) {
+        int rows = 0;
+        long millis = 0;
+        for (String part : window.trim().toLowerCase(Locale.ROOT).split("[,\\s]+")) {
+            if (part.isEmpty()) {
+                continue;
+            }
+            if (part.endsWith("s")) {
+                millis = Math.round(Double.parseDouble(part.substring(0, part.length() - 1)) * 1000);
+            } else {
+                rows = Integer.parseInt(part);
+            }
+            if (rows < 0 || millis < 0) {
+                throw new NumberFormatException(part);
+            }
+        }
+        windowRows = rows;
+        windowMillis = millis;
+    }
+
+    private String describeWindowValue() {
+        String rows = windowRows > 0 ? String.valueOf(windowRows) : "";
+        String seconds = windowMillis == 0 ? "" : (windowMillis % 1000 == 0 ? String.valueOf(windowMillis / 1000) : String.valueOf(windowMillis / 1000.0)) + "s";
+        return rows.isEmpty() || seconds.isEmpty() ? rows + seconds : rows + ", " + seconds;
+    }
+
+    private String describeWindow() {
+        if (windowRows == 0 && windowMillis == 0) {
+            return "Sliding window: off";
+        }
+        return "Sliding window: " + describeWindowValue();
+    }
+
+    // A source that never sent its header is dropped when another dataset is chosen
+    private void closePendingStream() {
+        if (pendingStream != null) {
+            try {
+                pendingStream.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            pendingStream = null;
+        }
+    }
+
     private void addComponent(GridBagConstraints constraints, Component component) {
         add(component, constraints);
         constraints.gridx++;
@@ -162,22 +427,21 @@ public class UiRibbon extends JPanel {
         }
     }
 
-    private void updateClassSelector(String[][] data) {
+    // Refill the dropdown with the dataset's classes, keeping the selected class selected
+    protected void updateClassSelector(Dataset data) {
+        Object selected = classSelector.getSelectedItem();
         classSelector.removeAllItems();
         String[] classNames = extractClassNames(data);
         for (String className : classNames) {
             classSelector.addItem(className);
         }
+        if (selected != null) {
+            classSelector.setSelectedItem(selected);
+        }
     }
 
-    private String[] extractClassNames(String[][] data) {
-        HashSet<String> classNamesSet = new HashSet<>();
-        // Assuming class names are in the last column
-        int lastColumnIndex = data[0].length - 1;
-        // Start loop from index 1 to skip the first row (header)
-        for (int i = 1; i < data.length; i++) {
-            classNamesSet.add(data[i][lastColumnIndex]);
-        }
-        return classNamesSet.toArray(new String[0]);
+    private String[] extractClassNames(Dataset data) {
+        // class labels are already deduplicated by the dataset's dictionary
+        return data.getClassNames().toArray(new String[0]);
     }       
 }
@@ -0,0 +1,272 @@
+package javaPC;
+
+import java.util.Arrays;
+
+/**
+ * Dataset keeping only the newest rows of a live source in fixed capacity buffers, optionally also dropping
+ * rows older than a time window. Once the buffers are full each new row replaces the oldest one in place, and
+ * the per axis min/max and class counts follow every eviction, so memory stays the same however long rows arrive.
+ */
+public class WindowedDataset extends Dataset {
+
+    // buffer size for windows bounded by time only
+    protected static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private final int capacity;
+    private final long maxAgeMillis;
+
+    // slot of the oldest row, the live rows run from head round the buffers. head is only nonzero while
+    // the buffers are full, so the live rows are always slots 0 to rowCount like any other dataset's
+    private int head;
+    // arrival number of the oldest row, int arithmetic keeps differences right when it wraps
+    private int firstSequence;
+    private final long[] arrivalMillis;
+    private int[] liveClassCounts = new int[0];
+    private int evictedRows;
+    // set when the live rows were moved back to slots 0 to rowCount since the last takeRowsMoved
+    private boolean rowsMoved;
+
+    // per axis arrival numbers of rows that can still become the min or max, the front is the current one
+    private final SequenceDeque[] minima;
+    private final SequenceDeque[] maxima;
+
+    /**
+     * Window of at most capacity rows, maxAgeMillis greater than 0 also drops rows that arrived longer ago
+     */
+    protected WindowedDataset(String[] header, int capacity, long maxAgeMillis) {
+        super(header, capacity);
+        this.capacity = Math.max(capacity, 1);
+        this.maxAgeMillis = maxAgeMillis;
+        arrivalMillis = new long[this.capacity];
+        minima = new SequenceDeque[getAttributeCount()];
+        maxima = new SequenceDeque[getAttributeCount()];
+        for (int col = 0; col < minima.length; col++) {
+            minima[col] = new SequenceDeque(this.capacity);
+            maxima[col] = new SequenceDeque(this.capacity);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getMaxAgeMillis() {
+        return maxAgeMillis;
+    }
+
+    @Override
+    protected void addRow(float[] values, String className) {
+        if (getRowCount() == capacity) {
+            evictOldest();
+        }
+        int rowCount = getRowCount();
+        int sequence = firstSequence + rowCount;
+        int slot = slotOf(sequence);
+        for (int col = 0; col < values.length; col++) {
+            float[] column = getColumn(col);
+            column[slot] = values[col];
+            // a NaN cell is never an extreme, and compares false so it would block older candidates from leaving
+            if (Float.isNaN(values[col])) {
+                continue;
+            }
+
+            // a new row outlives every older one, so older candidates it beats can never be the extreme again
+            SequenceDeque min = minima[col];
+            while (!min.isEmpty() && column[slotOf(min.last())] >= values[col]) {
+                min.removeLast();
+            }
+            min.addLast(sequence);
+            SequenceDeque max = maxima[col];
+            while (!max.isEmpty() && column[slotOf(max.last())] <= values[col]) {
+                max.removeLast();
+            }
+            max.addLast(sequence);
+        }
+
+        int classId = internClass(className);
+        getClassIds()[slot] = classId;
+        if (classId >= liveClassCounts.length) {
+            liveClassCounts = Arrays.copyOf(liveClassCounts, getClassCount());
+        }
+        liveClassCounts[classId]++;
+        arrivalMillis[slot] = System.currentTimeMillis();
+        setRowCount(rowCount + 1);
+    }
+
+    private void evictOldest() {
+        for (int col = 0; col < minima.length; col++) {
+            if (!minima[col].isEmpty() && minima[col].first() == firstSequence) {
+                minima[col].removeFirst();
+            }
+            if (!maxima[col].isEmpty() && maxima[col].first() == firstSequence) {
+                maxima[col].removeFirst();
+            }
+        }
+        liveClassCounts[getClassIds()[head]]--;
+        head = head + 1 == capacity ? 0 : head + 1;
+        firstSequence++;
+        setRowCount(getRowCount() - 1);
+        evictedRows++;
+    }
+
+    /**
+     * Drop rows older than the time window and return how many rows have left the window since the last call.
+     * Rows that arrived since took over the evicted rows' slots, unless takeRowsMoved says every live row moved.
+     */
+    protected int takeEvictedRows() {
+        if (maxAgeMillis > 0) {
+            long oldest = System.currentTimeMillis() - maxAgeMillis;
+            boolean expired = false;
+            while (getRowCount() > 0 && arrivalMillis[head] < oldest) {
+                evictOldest();
+                expired = true;
+            }
+            // the buffers are no longer full, move the live rows back to slots 0 to rowCount
+            if (expired && head != 0) {
+                rotateToHead();
+            }
+        }
+        int evicted = evictedRows;
+        evictedRows = 0;
+        return evicted;
+    }
+
+    // True when the live rows were moved to other slots since the last call, everything built from them is stale
+    protected boolean takeRowsMoved() {
+        boolean moved = rowsMoved;
+        rowsMoved = false;
+        return moved;
+    }
+
+    // Slot of the index-th oldest live row, the newest rows of a full window wrap round to the slots before head
+    protected int getArrivalSlot(int index) {
+        return slotOf(firstSequence + index);
+    }
+
+    private void rotateToHead() {
+        rowsMoved = true;
+        int rowCount = getRowCount();
+        int[] classIds = getClassIds();
+        if (head + rowCount <= capacity) {
+            // the live rows do not wrap, one move per buffer
+            for (int col = 0; col < minima.length; col++) {
+                System.arraycopy(getColumn(col), head, getColumn(col), 0, rowCount);
+            }
+            System.arraycopy(classIds, head, classIds, 0, rowCount);
+            System.arraycopy(arrivalMillis, head, arrivalMillis, 0, rowCount);
+        } else {
+            // rotate in place by three reversals, no second buffer
+            for (int col = 0; col < minima.length; col++) {
+                float[] column = getColumn(col);
+                reverse(column, 0, head);
+                reverse(column, head, capacity);
+                reverse(column, 0, capacity);
+            }
+            reverse(classIds, 0, head);
+            reverse(classIds, head, capacity);
+            reverse(classIds, 0, capacity);
+            reverse(arrivalMillis, 0, head);
+            reverse(arrivalMillis, head, capacity);
+            reverse(arrivalMillis, 0, capacity);
+        }
+        head = 0;
+    }
+
+    private static void reverse(float[] values, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            float swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+    }
+
+    private static void reverse(int[] values, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            int swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+    }
+
+    private static void reverse(long[] values, int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            long swap = values[i];
+            values[i] = values[j];
+            values[j] = swap;
+        }
+    }
+
+    private int slotOf(int sequence) {
+        int slot = head + (sequence - firstSequence);
+        return slot >= capacity ? slot - capacity : slot;
+    }
+
+    // Smallest value on the axis among the live rows, NaN cells left out, 0 when there is none
+    public float getMin(int col) {
+        return minima[col].isEmpty() ? 0 : getColumn(col)[slotOf(minima[col].first())];
+    }
+
+    public float getMax(int col) {
+        return maxima[col].isEmpty() ? 0 : getColumn(col)[slotOf(maxima[col].first())];
+    }
+
+    @Override
+    protected float[] getTrackedRange(int col) {
+        return new float[] {getMin(col), getMax(col)};
+    }
+
+    // Kept up to date on every add and eviction instead of counted
+    @Override
+    public int[] countClasses() {
+        return Arrays.copyOf(liveClassCounts, getClassCount());
+    }
+
+    /**
+     * Double ended queue of arrival numbers in a circular buffer, grown on demand up to the window capacity
+     */
+    private static class SequenceDeque {
+        private final int maxSize;
+        private int[] items = new int[16];
+        private int start;
+        private int size;
+
+        SequenceDeque(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        // only valid while not empty, an axis whose live values are all NaN has no candidates
+        int first() {
+            return items[start];
+        }
+
+        int last() {
+            return items[(start + size - 1) % items.length];
+        }
+
+        void addLast(int sequence) {
+            if (size == items.length) {
+                int[] grown = new int[Math.min(maxSize, items.length * 2)];
+                for (int i = 0; i < size; i++) {
+                    grown[i] = items[(start + i) % items.length];
+                }
+                items = grown;
+                start = 0;
+            }
+            items[(start + size) % items.length] = sequence;
+            size++;
+        }
+
+        void removeFirst() {
+            start = (start + 1) % items.length;
+            size--;
+        }
+
+        void removeLast() {
+            size--;
+        }
+    }
+}